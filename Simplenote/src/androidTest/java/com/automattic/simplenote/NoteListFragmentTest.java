@@ -77,7 +77,7 @@ public class NoteListFragmentTest extends ActivityInstrumentationTestCase2<Notes
         assertNotNull(noteListFragment);
         noteListFragment.refreshList();
 
-        NoteListFragment.NotesCursorAdapter adapter = noteListFragment.mNotesAdapter;
+        NoteListFragment.NotesAdapter adapter = noteListFragment.mNotesAdapter;
         noteListFragment.mSearchString = "welcome";
 
         assertEquals(1, adapter.getCount());
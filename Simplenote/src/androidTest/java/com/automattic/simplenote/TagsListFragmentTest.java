@@ -0,0 +1,44 @@
+package com.automattic.simplenote;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TagsListFragmentTest extends AndroidTestCase {
+
+    private static final int TAG_COUNT = 1000;
+
+    /**
+     * Binds every row of a list of 1,000 tags the way a fling would, recycling views. The
+     * fragment is never attached so it has no buckets: any query issued while binding a row
+     * would fail.
+     */
+    public void testBindingRowsDoesNotQuery()
+    throws Exception {
+        TagsListFragment fragment = new TagsListFragment();
+        TagsListFragment.TagsAdapter adapter = fragment.new TagsAdapter();
+
+        List<TagsListFragment.TagRow> rows = new ArrayList<>(TAG_COUNT);
+        for (int i = 0; i < TAG_COUNT; i++) {
+            rows.add(new TagsListFragment.TagRow("tag" + i, "Tag" + i, i % 3));
+        }
+        adapter.setRows(rows);
+
+        ListView parent = new ListView(getContext());
+        View convertView = null;
+
+        for (int i = 0; i < TAG_COUNT; i++) {
+            convertView = adapter.getView(i, convertView, parent);
+
+            TextView name = (TextView) convertView.findViewById(R.id.tag_name);
+            TextView count = (TextView) convertView.findViewById(R.id.tag_count);
+            assertEquals("Tag" + i, name.getText().toString());
+            assertEquals(i % 3 == 0 ? "" : String.valueOf(i % 3), count.getText().toString());
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.automattic.simplenote.models;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Reads the properties that indexers, list rows and autosaves check over and over. The
+ * parsed views are kept between reads so the same instances come back every time. The time
+ * the reads take is only logged.
+ */
+public class NoteAccessorsBenchmarkTest extends TestCase {
+
+    private static final int READ_COUNT = 100000;
+    private static final String TAG = "NoteAccessorsBenchmarkTest";
+
+    protected Note mNote;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mNote = new Note("benchmark");
+        mNote.setContent("Title\nContent");
+        mNote.setTags(Arrays.asList("Work", "home", "Lists", "recipes", "travel"));
+        mNote.setPinned(true);
+        mNote.setMarkdownEnabled(true);
+    }
+
+    public void testRepeatedReadsReuseViews() {
+        assertSame(mNote.getTags(), mNote.getTags());
+        assertSame(mNote.getLowercaseTags(), mNote.getLowercaseTags());
+        assertSame(mNote.getTagString(), mNote.getTagString());
+    }
+
+    public void testWritesReplaceViews() {
+        mNote.setTagString("one two");
+        assertEquals(Arrays.asList("one", "two"), mNote.getTags());
+        assertEquals("one two", mNote.getTagString().toString());
+        assertTrue(mNote.hasTag("ONE"));
+        assertFalse(mNote.hasTag("work"));
+
+        mNote.setPinned(false);
+        assertFalse(mNote.isPinned());
+        assertTrue(mNote.isMarkdownEnabled());
+    }
+
+    public void testGetTags() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < READ_COUNT; i++) {
+            mNote.getTags();
+        }
+        logDuration("getTags", start);
+
+        assertEquals(Arrays.asList("Work", "home", "Lists", "recipes", "travel"), mNote.getTags());
+    }
+
+    public void testHasTag() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < READ_COUNT; i++) {
+            mNote.hasTag("recipes");
+        }
+        logDuration("hasTag", start);
+
+        assertTrue(mNote.hasTag("WORK"));
+        assertFalse(mNote.hasTag("homework"));
+    }
+
+    public void testGetTagString() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < READ_COUNT; i++) {
+            mNote.getTagString();
+        }
+        logDuration("getTagString", start);
+
+        assertEquals("Work home Lists recipes travel", mNote.getTagString().toString());
+    }
+
+    public void testSystemTags() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < READ_COUNT; i++) {
+            mNote.isPinned();
+            mNote.isMarkdownEnabled();
+        }
+        logDuration("isPinned and isMarkdownEnabled", start);
+
+        assertTrue(mNote.isPinned());
+        assertTrue(mNote.isMarkdownEnabled());
+        assertFalse(mNote.isPublished());
+    }
+
+    public void testHasChanges() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < READ_COUNT; i++) {
+            mNote.hasChanges("Title\nContent", "Work home Lists recipes travel", true, true);
+        }
+        logDuration("hasChanges", start);
+
+        assertFalse(mNote.hasChanges("Title\nContent", "Work home Lists recipes travel", true, true));
+        assertTrue(mNote.hasChanges("Title\nContent", "Work home", true, true));
+        assertTrue(mNote.hasChanges("Title\nContent", "Work home Lists recipes travel", false, true));
+    }
+
+    // Timings vary too much between devices to assert, they're logged for comparing builds
+    private static void logDuration(String accessor, long start) {
+        long duration = System.currentTimeMillis() - start;
+        Log.i(TAG, String.format("%d calls to %s took %dms", READ_COUNT, accessor, duration));
+    }
+
+}
@@ -2,6 +2,8 @@ package com.automattic.simplenote.models;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 
@@ -35,6 +37,22 @@ public class NoteIndexerTest extends TestCase {
     }
 
 
+    public void testIndexTagsOncePerLowercaseName()
+    throws Exception {
+        Note note = new Note("test", new JSONObject());
+        note.setTags(Arrays.asList("Work", "work", "Home"));
+        List<Index> indexes = mIndexer.index(note);
+
+        List<Object> tags = new ArrayList<>();
+        for (Index index : indexes) {
+            if (index.getName().equals(Note.TAG_INDEX_NAME)) {
+                tags.add(index.getValue());
+            }
+        }
+
+        assertEquals(Arrays.<Object>asList("work", "home"), tags);
+    }
+
     public void testConvertMillisToSeconds()
     throws Exception {
         Calendar date = Note.numberToDate(1379018823037.0);
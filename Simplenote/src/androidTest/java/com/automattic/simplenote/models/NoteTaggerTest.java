@@ -27,4 +27,68 @@ public class NoteTaggerTest extends TestCase {
 
     }
 
+    public void testRecreateDeletedTags()
+    throws Exception {
+        Bucket<Note> notesBucket = MockBucket.buildBucket(new Note.Schema());
+        Bucket<Tag> tagsBucket = MockBucket.buildBucket(new Tag.Schema());
+        NoteTagger tagger = new NoteTagger(tagsBucket);
+
+        Note note = notesBucket.newObject("typing");
+        note.setTagString("work");
+        tagger.onSaveObject(notesBucket, note);
+        assertEquals(1, tagsBucket.count());
+
+        // the tagger learns about the deleted tag from the tags bucket
+        tagsBucket.getObject("work").delete();
+        assertEquals(0, tagsBucket.count());
+
+        // saving the note while its content is edited creates the tag it still has
+        note.setContent("Typing");
+        tagger.onSaveObject(notesBucket, note);
+        assertEquals(1, tagsBucket.count());
+
+        // saving it again with the same tags doesn't create any
+        tagger.onSaveObject(notesBucket, note);
+        assertEquals(1, tagsBucket.count());
+
+        // new tags are indexed after the existing tags
+        note.setTagString("work home");
+        tagger.onSaveObject(notesBucket, note);
+        assertEquals(2, tagsBucket.count());
+        assertEquals(Integer.valueOf(1), tagsBucket.getObject("home").getIndex());
+    }
+
+    public void testTagBatchOnceCommitted()
+    throws Exception {
+        Bucket<Note> notesBucket = MockBucket.buildBucket(new Note.Schema());
+        Bucket<Tag> tagsBucket = MockBucket.buildBucket(new Tag.Schema());
+
+        NoteTagger tagger = new NoteTagger(tagsBucket);
+        NoteBatch.addListener(tagger);
+        try {
+            NoteBatch batch = new NoteBatch(notesBucket);
+
+            Note first = notesBucket.newObject("first");
+            first.setTagString("work home");
+            batch.save(first);
+
+            Note second = notesBucket.newObject("second");
+            second.setTagString("Work");
+            batch.save(second);
+
+            // held notes aren't tagged one by one
+            assertTrue(NoteBatch.isHeld("first"));
+            tagger.onSaveObject(notesBucket, first);
+            assertEquals(0, tagsBucket.count());
+
+            batch.commit();
+
+            assertFalse(NoteBatch.isHeld("first"));
+            assertEquals(2, tagsBucket.count());
+            assertEquals("work", tagsBucket.getObject("work").getName());
+        } finally {
+            NoteBatch.removeListener(tagger);
+        }
+    }
+
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.automattic.simplenote.models;
 
 import junit.framework.TestCase;
 
+import org.json.JSONArray;
+
 import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
@@ -45,6 +47,50 @@ public class NoteTest extends TestCase {
         assertEquals("one two three four", mNote.getTagString().toString());
     }
 
+    public void testSingleCharacterTagString(){
+        mNote.setTagString("a");
+
+        assertEquals(tagList("a"), mNote.getTags());
+    }
+
+    public void testUnchangedTagStringKeepsTags(){
+        mNote.setTagString("one Two three");
+        List<String> tags = mNote.getTags();
+
+        mNote.setTagString("one Two three");
+        assertSame(tags, mNote.getTags());
+
+        mNote.setTagString(" one  Two three two ");
+        assertSame(tags, mNote.getTags());
+
+        mNote.setTagString("one two three");
+        assertEquals(tagList("one", "two", "three"), mNote.getTags());
+    }
+
+    public void testTagsChangedInPlace() throws Exception {
+        mNote.setTagString("one two");
+        assertTrue(mNote.hasTag("two"));
+
+        // same array and length, e.g. a change applied to the tags array itself
+        ((JSONArray) mNote.getProperty(Note.TAGS_PROPERTY)).put(1, "three");
+
+        assertEquals(tagList("one", "three"), mNote.getTags());
+        assertFalse(mNote.hasTag("two"));
+        assertTrue(mNote.hasTag("Three"));
+        assertEquals("one three", mNote.getTagString().toString());
+    }
+
+    public void testSystemTagsChangedInPlace() throws Exception {
+        mNote.setPinned(true);
+        assertTrue(mNote.isPinned());
+        assertFalse(mNote.isMarkdownEnabled());
+
+        mNote.getSystemTags().put(0, Note.MARKDOWN_TAG);
+
+        assertFalse(mNote.isPinned());
+        assertTrue(mNote.isMarkdownEnabled());
+    }
+
     public void testParseTitleAndPreview(){
         String title = "Lorem ipsum dolor sit amet,";
         String preview = "consectetur adipisicing elit, "
@@ -62,6 +108,30 @@ public class NoteTest extends TestCase {
         assertEquals(preview, mNote.getContentPreview());
     }
 
+    public void testParseTitleAndPreviewOfLargeNote(){
+        String content = largeContent("Lorem ipsum\n\n  dolor  sit amet\n");
+
+        mNote.setContent(content);
+
+        assertEquals("Lorem ipsum", mNote.getTitle());
+        String preview = mNote.getContentPreview();
+        assertTrue(preview.startsWith("dolor sit amet Lorem ipsum"));
+        assertTrue(preview.length() < 300);
+    }
+
+    public void testParseTitleAndPreviewOnlyReadsStartOfContent(){
+        String content = largeContent("\n  Lorem ipsum\ndolor sit amet ");
+        Note shortNote = new Note("short");
+        shortNote.setContent(content.substring(0, 1000));
+
+        mNote.setContent(content);
+
+        // the title and preview come from the first 300 chars, whatever follows them
+        assertEquals("Lorem ipsum", mNote.getTitle());
+        assertEquals(shortNote.getTitle(), mNote.getTitle());
+        assertEquals(shortNote.getContentPreview(), mNote.getContentPreview());
+    }
+
     public void testNoteDoesHaveTag(){
         Tag tag = new Tag("tag");
         tag.setName("Tag");
@@ -88,6 +158,15 @@ public class NoteTest extends TestCase {
         assertFalse(note.isPinned());
     }
 
+    // about 5 MB of the line repeated
+    protected String largeContent(String line){
+        StringBuilder content = new StringBuilder(5 * 1024 * 1024 + line.length());
+        while (content.length() < 5 * 1024 * 1024) {
+            content.append(line);
+        }
+        return content.toString();
+    }
+
     protected List<String> tagList(String ... tags){
         List<String> tagArray = new ArrayList<>(tags.length);
         Collections.addAll(tagArray, tags);
@@ -0,0 +1,111 @@
+package com.automattic.simplenote.models;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.automattic.simplenote.simperium.MockAndroidClient;
+import com.simperium.Simperium;
+import com.simperium.client.Bucket;
+import com.simperium.client.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class TagIndexBenchmarkTest extends AndroidTestCase {
+
+    private static final String TAG = "TagIndexBenchmarkTest";
+
+    private static final int NOTE_COUNT = 50000;
+    private static final int QUERY_RUNS = 5;
+
+    // built once and shared by every test, filling the bucket takes far longer than the queries
+    private static Bucket<Note> sNotesBucket;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (sNotesBucket != null) return;
+
+        Simperium simperium = new Simperium("mock-app", "mock-secret", new MockAndroidClient(getContext()));
+        sNotesBucket = simperium.bucket(new Note.Schema());
+        sNotesBucket.reset();
+
+        // every tenth note is tagged "work" in varying case, the rest are tagged "home"
+        for (int i = 0; i < NOTE_COUNT; i++) {
+            Note note = sNotesBucket.newObject();
+            note.setContent("Note " + i);
+            note.setTags(i % 10 == 0 ? Arrays.asList(i % 20 == 0 ? "Work" : "work") : Arrays.asList("home"));
+            note.save();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Note.setTagIndexReady(true);
+        super.tearDown();
+    }
+
+    public void testTagIndexMatchesExactly()
+    throws Exception {
+        Note.setTagIndexReady(true);
+
+        assertEquals(NOTE_COUNT / 10, Note.allInTag(sNotesBucket, "work").count());
+        assertEquals(NOTE_COUNT / 10, Note.allInTag(sNotesBucket, "WORK").count());
+        assertEquals(0, Note.allInTag(sNotesBucket, "wor").count());
+    }
+
+    /**
+     * Compares filtering 50,000 notes by tag with the tags column pattern match used before
+     * the tag index and with the tag index. Both return the same notes so they read the same
+     * number of rows, the times are logged rather than asserted since they depend on the device.
+     */
+    public void testTagIndexFindsSameNotesAsPatternMatch()
+    throws Exception {
+        Note.setTagIndexReady(false);
+        List<String> patternKeys = readTagQuery();
+        long patternDuration = timeTagQuery();
+
+        Note.setTagIndexReady(true);
+        List<String> indexKeys = readTagQuery();
+        long indexDuration = timeTagQuery();
+
+        assertEquals(NOTE_COUNT / 10, indexKeys.size());
+        assertEquals(new HashSet<>(patternKeys), new HashSet<>(indexKeys));
+
+        Log.i(TAG, String.format("Median of %d tag queries: tag index %dms, pattern match %dms",
+                QUERY_RUNS, indexDuration, patternDuration));
+    }
+
+    // Median time of several runs so one slow run doesn't skew the result
+    private long timeTagQuery() {
+        long[] durations = new long[QUERY_RUNS];
+        for (int i = 0; i < QUERY_RUNS; i++) {
+            long start = SystemClock.elapsedRealtime();
+            readTagQuery();
+            durations[i] = SystemClock.elapsedRealtime() - start;
+        }
+
+        Arrays.sort(durations);
+        return durations[QUERY_RUNS / 2];
+    }
+
+    private List<String> readTagQuery() {
+        List<String> keys = new ArrayList<>();
+
+        Query<Note> query = Note.allInTag(sNotesBucket, "work");
+        Bucket.ObjectCursor<Note> cursor = query.execute();
+        try {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getSimperiumKey());
+            }
+        } finally {
+            cursor.close();
+        }
+        return keys;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.automattic.simplenote.models;
+
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.automattic.simplenote.simperium.MockAndroidClient;
+import com.automattic.simplenote.utils.PrefUtils;
+import com.simperium.Simperium;
+import com.simperium.client.Bucket;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TagIndexBuilderTest extends AndroidTestCase {
+
+    Bucket<Note> mNotesBucket;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        Simperium simperium = new Simperium("mock-app", "mock-secret", new MockAndroidClient(getContext()));
+        mNotesBucket = simperium.bucket(new Note.Schema());
+        mNotesBucket.reset();
+        clearPrefs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Note.setTagIndexReady(true);
+        mNotesBucket.reset();
+        clearPrefs();
+        super.tearDown();
+    }
+
+    public void testBuildsIndexOfEveryNote()
+    throws Exception {
+        int noteCount = TagIndexBuilder.BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < noteCount; i++) {
+            Note note = mNotesBucket.newObject(String.format("note%03d", i));
+            note.setTags(Arrays.asList(i % 2 == 0 ? "Work" : "home"));
+            note.save();
+        }
+
+        Note.setTagIndexReady(false);
+        assertTrue(new TagIndexBuilder(getContext(), mNotesBucket).build());
+
+        assertTrue(TagIndexBuilder.isBuilt(getContext()));
+        assertNull(PrefUtils.getStringPref(getContext(), PrefUtils.PREF_TAG_INDEX_RESUME_KEY, null));
+        assertEquals(TagIndexBuilder.BATCH_SIZE + 1, Note.allInTag(mNotesBucket, "work").count());
+    }
+
+    public void testResumesAfterLastSavedNote()
+    throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Note note = mNotesBucket.newObject("note" + i);
+            note.setTags(Arrays.asList("work"));
+            note.save();
+        }
+
+        // an earlier build was interrupted after saving the first half of the notes
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .putString(PrefUtils.PREF_TAG_INDEX_RESUME_KEY, "note4")
+                .commit();
+
+        Note.setTagIndexReady(false);
+        assertTrue(new TagIndexBuilder(getContext(), mNotesBucket).build());
+        assertEquals(10, Note.allInTag(mNotesBucket, "work").count());
+    }
+
+    public void testChecksIndexedNotesWithoutSavingThem()
+    throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Note note = mNotesBucket.newObject("note" + i);
+            note.setTags(Arrays.asList("work"));
+            note.save();
+        }
+
+        final AtomicInteger saveCount = new AtomicInteger();
+        Bucket.OnSaveObjectListener<Note> listener = new Bucket.OnSaveObjectListener<Note>() {
+            @Override
+            public void onSaveObject(Bucket<Note> bucket, Note note) {
+                saveCount.incrementAndGet();
+            }
+        };
+        mNotesBucket.addOnSaveObjectListener(listener);
+
+        try {
+            Note.setTagIndexReady(false);
+            assertTrue(new TagIndexBuilder(getContext(), mNotesBucket).build());
+        } finally {
+            mNotesBucket.removeOnSaveObjectListener(listener);
+        }
+
+        // the notes were saved with the tag index, so none was saved again
+        assertEquals(0, saveCount.get());
+        assertTrue(TagIndexBuilder.isBuilt(getContext()));
+    }
+
+    public void testCancelledBuildIsNotBuilt()
+    throws Exception {
+        Note note = mNotesBucket.newObject("note");
+        note.setTags(Arrays.asList("work"));
+        note.save();
+
+        Note.setTagIndexReady(false);
+        TagIndexBuilder builder = new TagIndexBuilder(getContext(), mNotesBucket);
+        // the user signed out before the build ran
+        builder.cancel();
+
+        assertFalse(builder.build());
+        assertFalse(TagIndexBuilder.isBuilt(getContext()));
+        assertEquals(1, Note.allInTag(mNotesBucket, "work").count());
+    }
+
+    public void testResetForgetsBuiltIndex()
+    throws Exception {
+        assertTrue(new TagIndexBuilder(getContext(), mNotesBucket).build());
+        assertTrue(TagIndexBuilder.isBuilt(getContext()));
+
+        TagIndexBuilder.reset(getContext());
+
+        assertFalse(TagIndexBuilder.isBuilt(getContext()));
+    }
+
+    private void clearPrefs() {
+        PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                .remove(PrefUtils.PREF_TAG_INDEX_BUILT)
+                .remove(PrefUtils.PREF_TAG_INDEX_RESUME_KEY)
+                .commit();
+    }
+}
@@ -0,0 +1,117 @@
+package com.automattic.simplenote.models;
+
+import junit.framework.TestCase;
+
+import com.simperium.client.Bucket;
+import com.simperium.client.BucketObjectMissingException;
+
+public class TagTest extends TestCase {
+
+    protected Bucket<Note> mNotesBucket;
+    protected Bucket<Tag> mTagsBucket;
+    protected NoteTagger mTagger;
+
+    protected void setUp()
+    throws Exception {
+        super.setUp();
+
+        mNotesBucket = MockBucket.buildBucket(new Note.Schema());
+        mTagsBucket = MockBucket.buildBucket(new Tag.Schema());
+        mTagger = new NoteTagger(mTagsBucket);
+        mNotesBucket.addListener(mTagger);
+        NoteBatch.addListener(mTagger);
+    }
+
+    protected void tearDown()
+    throws Exception {
+        NoteBatch.removeListener(mTagger);
+        super.tearDown();
+    }
+
+    public void testRemoveFromNotesIgnoresCase()
+    throws Exception {
+        int noteCount = Tag.REMOVE_BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < noteCount; i++) {
+            Note note = mNotesBucket.newObject("note" + i);
+            note.setTagString(i % 2 == 0 ? "Work home" : "WORK");
+            note.save();
+        }
+
+        Tag tag = mTagsBucket.getObject("work");
+        final int[] batchCount = {0};
+
+        assertTrue(tag.removeFromNotes(mNotesBucket, new Tag.OnNotesProgressListener() {
+            @Override
+            public void onNotesProgress(int updatedNotes, int totalNotes) {
+                batchCount[0]++;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        }));
+
+        for (int i = 0; i < noteCount; i++) {
+            assertEquals(i % 2 == 0 ? "home" : "", mNotesBucket.get("note" + i).getTagString().toString());
+        }
+
+        // saved in batches instead of note by note
+        assertEquals(3, batchCount[0]);
+
+        // the tag is gone and wasn't recreated by the tagger
+        try {
+            mTagsBucket.getObject("work");
+            fail("Tag was not deleted");
+        } catch (BucketObjectMissingException e) {
+            // expected
+        }
+    }
+
+    public void testCancelledRemovalKeepsTag()
+    throws Exception {
+        for (int i = 0; i < Tag.REMOVE_BATCH_SIZE * 2; i++) {
+            Note note = mNotesBucket.newObject("note" + i);
+            note.setTagString("work");
+            note.save();
+        }
+
+        Tag tag = mTagsBucket.getObject("work");
+        assertFalse(tag.removeFromNotes(mNotesBucket, new Tag.OnNotesProgressListener() {
+            int mProgressCount;
+
+            @Override
+            public void onNotesProgress(int updatedNotes, int totalNotes) {
+                mProgressCount++;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                // cancel once the first batch is done
+                return mProgressCount > 0;
+            }
+        }));
+
+        assertNotNull(mTagsBucket.getObject("work"));
+        assertEquals(Tag.REMOVE_BATCH_SIZE, Note.allInTag(mNotesBucket, "work").count());
+    }
+
+    public void testRenameMovesEveryNote()
+    throws Exception {
+        int noteCount = Tag.REMOVE_BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < noteCount; i++) {
+            Note note = mNotesBucket.newObject("note" + i);
+            note.setTagString(i % 2 == 0 ? "Work home" : "WORK");
+            note.save();
+        }
+
+        mTagsBucket.getObject("work").renameTo("Job", mNotesBucket);
+
+        for (int i = 0; i < noteCount; i++) {
+            assertEquals(i % 2 == 0 ? "Job home" : "Job", mNotesBucket.get("note" + i).getTagString().toString());
+        }
+        assertEquals(0, Note.allInTag(mNotesBucket, "work").count());
+        assertEquals(noteCount, Note.allInTag(mNotesBucket, "job").count());
+    }
+
+}
@@ -250,4 +250,136 @@ public class AutoBulletTest extends TestCase {
         AutoBullet.apply(editable, oldPos, newPos);
         assertEquals(target, editable.toString());
     }
+
+    public void testNumberedList() {
+        String source = "1. one\n";
+        String target = "1. one\n2. ";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testNumberedListWithParenthesis() {
+        String source = "9) nine\n";
+        String target = "9) nine\n10) ";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testEmptyNumberedItem() {
+        String source = "1. one\n2. \n";
+        String target = "1. one\n\n";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testEmptySecondLevelNumberedItem() {
+        String source = "  3. three\n  4. \n";
+        String target = "  3. three\n 4. ";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testNumberWithoutSpace() {
+        String source = "1.one\n";
+        String target = "1.one\n";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testNumberWithoutDelimiter() {
+        String source = "2016 was a year\n";
+        String target = "2016 was a year\n";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testChecklist() {
+        String source = "- [ ] todo\n";
+        String target = "- [ ] todo\n- [ ] ";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testCheckedChecklist() {
+        String source = "- [x] done\n";
+        String target = "- [x] done\n- [ ] ";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testEmptyChecklistItem() {
+        String source = "- [ ] todo\n- [ ] \n";
+        String target = "- [ ] todo\n\n";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testBulletStartingWithLink() {
+        String source = "- [link](url)\n";
+        String target = "- [link](url)\n- ";
+        int oldPos = source.length() - 1;
+        int newPos = source.length();
+
+        Editable editable = buildEditable(source);
+        AutoBullet.apply(editable, oldPos, newPos);
+        assertEquals(target, editable.toString());
+    }
+
+    public void testContinueListAfterLargeDocument() {
+        // about 1 MB of text before a list that keeps growing
+        StringBuilder source = new StringBuilder();
+        while (source.length() < 1024 * 1024) {
+            source.append("Lorem ipsum dolor sit amet, consectetur adipisicing elit\n");
+        }
+        String text = source.toString();
+        source.append("- item\n");
+        Editable editable = buildEditable(source);
+
+        for (int i = 0; i < 1000; i++) {
+            AutoBullet.apply(editable, editable.length() - 1, editable.length());
+            editable.append("item\n");
+        }
+
+        StringBuilder target = new StringBuilder(text);
+        for (int i = 0; i < 1001; i++) {
+            target.append("- item\n");
+        }
+        assertEquals(target.toString(), editable.toString());
+    }
 }
@@ -0,0 +1,125 @@
+package com.automattic.simplenote.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.test.InstrumentationTestCase;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads note HTML into a real web view to check that scripts of the note never run while the
+ * preview's own patches still apply
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class MarkdownPreviewScriptTest extends InstrumentationTestCase {
+
+    private static final String SCRIPTS = "<p><img src=\"missing.png\" onerror=\"document.title='ran'\"></p>\n" +
+            "<script>document.title='ran'</script>\n" +
+            "<p><a id=\"link\" href=\"#\" onclick=\"document.title='ran'\">link</a></p>\n";
+
+    private WebView mWebView;
+    private MarkdownPreviewUpdater mUpdater;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mWebView = new WebView(getInstrumentation().getTargetContext());
+                mUpdater = new MarkdownPreviewUpdater(mWebView, "");
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mWebView.destroy();
+            }
+        });
+
+        super.tearDown();
+    }
+
+    public void testInlineScriptsOfLoadedPageDontRun()
+    throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return;
+
+        setHtml("<h1>Title</h1>\n" + SCRIPTS);
+        waitFor("document.getElementById('link') != null");
+
+        click("link");
+        // give the image's error event time to fire
+        Thread.sleep(500);
+        assertFalse("\"ran\"".equals(evaluate("document.title")));
+    }
+
+    public void testInlineScriptsOfPatchedBlocksDontRun()
+    throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return;
+
+        setHtml("<h1>Title</h1>\n");
+        waitFor("document.getElementsByTagName('h1').length == 1");
+
+        // the second render is patched in, which has to work under the page's policy
+        setHtml("<h1>Title</h1>\n" + SCRIPTS);
+        waitFor("document.getElementById('link') != null");
+
+        click("link");
+        Thread.sleep(500);
+        assertFalse("\"ran\"".equals(evaluate("document.title")));
+    }
+
+    private void setHtml(final String html) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mUpdater.setHtml(html);
+            }
+        });
+    }
+
+    private void click(String id)
+    throws InterruptedException {
+        evaluate("document.getElementById('" + id + "').click()");
+    }
+
+    private void waitFor(String condition)
+    throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if ("true".equals(evaluate(condition))) return;
+            Thread.sleep(100);
+        }
+        fail("Timed out waiting for " + condition);
+    }
+
+    // Scripts evaluated by the app aren't subject to the page's content security policy
+    private String evaluate(final String script)
+    throws InterruptedException {
+        final String[] result = new String[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mWebView.evaluateJavascript(script, new ValueCallback<String>() {
+                    @Override
+                    public void onReceiveValue(String value) {
+                        result[0] = value;
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return result[0];
+    }
+}
@@ -0,0 +1,41 @@
+package com.automattic.simplenote.utils;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class MarkdownPreviewUpdaterTest extends TestCase {
+
+    public void testSplitsTopLevelBlocks() {
+        List<String> blocks = MarkdownPreviewUpdater.splitBlocks("<h1>Title</h1>\n<p>one</p>\n<p>two</p>\n");
+        assertEquals(Arrays.asList("<h1>Title</h1>\n", "<p>one</p>\n", "<p>two</p>\n"), blocks);
+    }
+
+    public void testKeepsNestedLinesInTheirBlock() {
+        String list = "<ul>\n<li>one</li>\n<li>two</li>\n</ul>\n";
+        String code = "<pre><code>a\n&lt;b\n</code></pre>\n";
+        List<String> blocks = MarkdownPreviewUpdater.splitBlocks(list + code);
+        assertEquals(Arrays.asList(list, code), blocks);
+    }
+
+    public void testIgnoresVoidAndSelfClosingElements() {
+        List<String> blocks = MarkdownPreviewUpdater.splitBlocks("<hr/>\n<p>a<br>b<img src=\"x\"></p>\n<hr>\n<p>c</p>");
+        assertEquals(Arrays.asList("<hr/>\n", "<p>a<br>b<img src=\"x\"></p>\n", "<hr>\n", "<p>c</p>"), blocks);
+    }
+
+    public void testSkipsComments() {
+        List<String> blocks = MarkdownPreviewUpdater.splitBlocks("<!-- <p>\n -->\n<p>a</p>");
+        assertEquals(Arrays.asList("<!-- <p>\n -->\n", "<p>a</p>"), blocks);
+    }
+
+    public void testKeepsUnclosedElementsInOneBlock() {
+        String html = "<p>a</p>\n<div>\nb\n<p>c</p>\n";
+        List<String> blocks = MarkdownPreviewUpdater.splitBlocks(html);
+        assertEquals(Arrays.asList("<p>a</p>\n", "<div>\nb\n<p>c</p>\n"), blocks);
+    }
+
+    public void testSplitsEmptyHtml() {
+        assertTrue(MarkdownPreviewUpdater.splitBlocks("").isEmpty());
+    }
+}
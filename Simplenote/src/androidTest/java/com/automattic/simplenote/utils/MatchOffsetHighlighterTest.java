@@ -112,4 +112,53 @@ public class MatchOffsetHighlighterTest extends TestCase {
         
     }
 
+    public void testTranslateOffsets()
+    throws Exception {
+        // '\u00e9' is two bytes, '\u8212' three and the surrogate pair four
+        Utf8OffsetTranslator translator = new Utf8OffsetTranslator("a\u00e9\u8212\uD83D\uDE00b");
+
+        assertEquals(0, translator.toCharOffset(0));
+        assertEquals(1, translator.toCharOffset(1));
+        assertEquals(2, translator.toCharOffset(3));
+        assertEquals(3, translator.toCharOffset(6));
+        assertEquals(5, translator.toCharOffset(10));
+        assertEquals(6, translator.toCharOffset(11));
+
+        // going backwards starts over
+        assertEquals(1, translator.toCharOffset(1));
+
+        // past the end caps at the length of the text
+        assertEquals(6, translator.toCharOffset(100));
+    }
+
+    // Highlights a match every 100 bytes of a 1 MB note in a single pass over the text
+    public void testHighlightMatchesInLargeNote()
+    throws Exception {
+        StringBuilder builder = new StringBuilder();
+        StringBuilder matches = new StringBuilder();
+        String line = "caf\u00e9 \u8212 match ";
+        int lineBytes = line.getBytes(MatchOffsetHighlighter.CHARSET).length;
+        int byteOffset = 0;
+        int matchCount = 0;
+
+        while (byteOffset < 1024 * 1024) {
+            builder.append(line);
+            // "match" starts 10 bytes into the line
+            matches.append("1 0 ").append(byteOffset + 10).append(" 5 ");
+            byteOffset += lineBytes;
+            matchCount++;
+        }
+        builder.append("end");
+
+        Spannable text = new SpannableString(builder.toString());
+
+        MatchOffsetHighlighter.highlightMatches(text, matches.toString(), 1, sHighlighter);
+
+        Object[] spans = text.getSpans(0, text.length(), Object.class);
+        assertEquals(matchCount, spans.length);
+        for (Object span : spans) {
+            assertEquals("match", text.toString().substring(text.getSpanStart(span), text.getSpanEnd(span)));
+        }
+    }
+
 }
\ No newline at end of file
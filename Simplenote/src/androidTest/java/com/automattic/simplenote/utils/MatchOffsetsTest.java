@@ -0,0 +1,77 @@
+package com.automattic.simplenote.utils;
+
+import junit.framework.TestCase;
+
+import java.util.Scanner;
+
+public class MatchOffsetsTest extends TestCase {
+
+    public void testParseMatches()
+    throws Exception {
+        MatchOffsets offsets = new MatchOffsets();
+
+        assertEquals(3, offsets.parse("1 0 6 5 0 0 2 1 1 2 18 3"));
+        assertEquals(1, offsets.getColumn(0));
+        assertEquals(0, offsets.getToken(0));
+        assertEquals(6, offsets.getStart(0));
+        assertEquals(5, offsets.getLength(0));
+        assertEquals(0, offsets.getColumn(1));
+        assertEquals(2, offsets.getToken(2));
+        assertEquals(18, offsets.getStart(2));
+        assertEquals(3, offsets.getLength(2));
+    }
+
+    public void testParseEmptyAndInvalidMatches()
+    throws Exception {
+        MatchOffsets offsets = new MatchOffsets();
+
+        assertEquals(0, offsets.parse(null));
+        assertEquals(0, offsets.parse(""));
+        assertEquals(0, offsets.parse("   "));
+
+        // an incomplete trailing match is dropped
+        assertEquals(1, offsets.parse("1 0 6 5 1 0"));
+
+        // parsing stops at the first value that isn't a number
+        assertEquals(1, offsets.parse("1 0 6 5 x 0 2 1"));
+    }
+
+    public void testParseGrowsBuffer()
+    throws Exception {
+        MatchOffsets offsets = new MatchOffsets(1);
+
+        assertEquals(100, offsets.parse(buildOffsets(100)));
+        assertEquals(99 * 10, offsets.getStart(99));
+
+        // a shorter string replaces the previous matches
+        assertEquals(1, offsets.parse("2 1 3 4"));
+        assertEquals(2, offsets.getColumn(0));
+    }
+
+    // Parses the offsets of 10,000 matches the way the Scanner based parsing it replaced did
+    public void testParseMatchesScanner()
+    throws Exception {
+        String matches = buildOffsets(10000);
+        MatchOffsets offsets = new MatchOffsets();
+
+        assertEquals(10000, offsets.parse(matches));
+
+        Scanner scanner = new Scanner(matches);
+        for (int i = 0; i < offsets.getCount(); i++) {
+            assertEquals(scanner.nextInt(), offsets.getColumn(i));
+            assertEquals(scanner.nextInt(), offsets.getToken(i));
+            assertEquals(scanner.nextInt(), offsets.getStart(i));
+            assertEquals(scanner.nextInt(), offsets.getLength(i));
+        }
+        assertFalse(scanner.hasNext());
+    }
+
+    private static String buildOffsets(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(i % 3).append(' ').append(i % 2).append(' ').append(i * 10).append(" 5 ");
+        }
+        return builder.toString();
+    }
+
+}
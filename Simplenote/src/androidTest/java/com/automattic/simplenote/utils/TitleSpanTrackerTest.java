@@ -0,0 +1,107 @@
+package com.automattic.simplenote.utils;
+
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.RelativeSizeSpan;
+
+import junit.framework.TestCase;
+
+public class TitleSpanTrackerTest extends TestCase {
+
+    protected TitleSpanTracker mTracker;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTracker = new TitleSpanTracker();
+    }
+
+    // Editable that tells the tracker about every edit like NoteEditorFragment does
+    private Editable buildEditable(CharSequence source) {
+        Editable editable = Editable.Factory.getInstance().newEditable(source);
+        mTracker.apply(editable);
+        editable.setSpan(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                mTracker.onTextChanged(s, start, before, count);
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mTracker.apply(s);
+            }
+        }, 0, editable.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        return editable;
+    }
+
+    private void assertTitle(Editable editable, int end) {
+        RelativeSizeSpan[] spans = editable.getSpans(0, editable.length(), RelativeSizeSpan.class);
+        if (end == 0) {
+            assertEquals(0, spans.length);
+            return;
+        }
+
+        assertEquals(1, spans.length);
+        assertEquals(0, editable.getSpanStart(spans[0]));
+        assertEquals(end, editable.getSpanEnd(spans[0]));
+    }
+
+    public void testTitleIsFirstLine() {
+        Editable editable = buildEditable("Title\nContent");
+        assertTitle(editable, 5);
+    }
+
+    public void testTitleWithoutNewLine() {
+        Editable editable = buildEditable("Title");
+        editable.append(" more");
+        assertTitle(editable, 10);
+    }
+
+    public void testEmptyFirstLine() {
+        Editable editable = buildEditable("\nContent");
+        assertTitle(editable, 0);
+
+        editable.insert(0, "T");
+        assertTitle(editable, 1);
+    }
+
+    public void testNewLineInTitle() {
+        Editable editable = buildEditable("Title line\nContent");
+        editable.insert(5, "\n");
+        assertTitle(editable, 5);
+    }
+
+    public void testRemoveFirstNewLine() {
+        Editable editable = buildEditable("Title\nMore title\nContent");
+        editable.delete(5, 6);
+        assertTitle(editable, 15);
+    }
+
+    public void testTypingInTitle() {
+        Editable editable = buildEditable("Title\nContent");
+        editable.insert(5, "s");
+        assertTitle(editable, 6);
+        editable.delete(0, 2);
+        assertTitle(editable, 4);
+    }
+
+    public void testTypingAfterTitleOfLargeNote() {
+        StringBuilder content = new StringBuilder("Title\n");
+        while (content.length() < 500 * 1024) {
+            content.append("Lorem ipsum dolor sit amet\n");
+        }
+        Editable editable = buildEditable(content);
+
+        for (int i = 0; i < 1000; i++) {
+            editable.append('a');
+        }
+
+        assertTitle(editable, 5);
+        assertEquals(5, mTracker.getTitleEnd());
+    }
+
+}
@@ -17,9 +17,7 @@ import android.support.v4.app.Fragment;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.view.ActionMode;
 import android.text.Editable;
-import android.text.Spanned;
 import android.text.TextWatcher;
-import android.text.style.RelativeSizeSpan;
 import android.text.style.URLSpan;
 import android.text.util.Linkify;
 import android.util.TypedValue;
@@ -43,16 +41,18 @@ import com.automattic.simplenote.utils.AutoBullet;
 import com.automattic.simplenote.utils.DisplayUtils;
 import com.automattic.simplenote.utils.DrawableUtils;
 import com.automattic.simplenote.utils.MatchOffsetHighlighter;
+import com.automattic.simplenote.utils.MarkdownPreviewUpdater;
+import com.automattic.simplenote.utils.MarkdownRenderer;
 import com.automattic.simplenote.utils.NoteUtils;
+import com.automattic.simplenote.utils.ParagraphLinkifier;
 import com.automattic.simplenote.utils.PrefUtils;
-import com.automattic.simplenote.utils.SimplenoteLinkify;
 import com.automattic.simplenote.utils.SnackbarUtils;
 import com.automattic.simplenote.utils.SpaceTokenizer;
 import com.automattic.simplenote.utils.TagsMultiAutoCompleteTextView;
 import com.automattic.simplenote.utils.TagsMultiAutoCompleteTextView.OnTagAddedListener;
 import com.automattic.simplenote.utils.TextHighlighter;
+import com.automattic.simplenote.utils.TitleSpanTracker;
 import com.automattic.simplenote.widgets.SimplenoteEditText;
-import com.commonsware.cwac.anddown.AndDown;
 import com.simperium.client.Bucket;
 import com.simperium.client.BucketObjectMissingException;
 import com.simperium.client.Query;
@@ -83,6 +83,13 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
     private SimplenoteEditText mContentEditText;
     private TagsMultiAutoCompleteTextView mTagView;
 
+    // Incremented on every edit of the content, saves only read the content when it moved on
+    private volatile int mContentGeneration;
+    private volatile int mSavedContentGeneration = -1;
+
+    private final TitleSpanTracker mTitleSpanTracker = new TitleSpanTracker();
+    private final ParagraphLinkifier mLinkifier = new ParagraphLinkifier(Linkify.ALL);
+
     private Handler mAutoSaveHandler;
     private Handler mPublishTimeoutHandler;
     private Handler mHistoryTimeoutHandler;
@@ -110,6 +117,8 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
     private NoteMarkdownFragment mNoteMarkdownFragment;
     private String mCss;
     private WebView mMarkdown;
+    private MarkdownPreviewUpdater mMarkdownUpdater;
+    private final MarkdownRenderer mMarkdownRenderer = new MarkdownRenderer();
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -200,6 +209,8 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
                     mCss = "<link rel=\"stylesheet\" type=\"text/css\" href=\"light.css\" />";
                     break;
             }
+
+            mMarkdownUpdater = new MarkdownPreviewUpdater(mMarkdown, mCss);
         }
 
         mTagView.setAdapter(mAutocompleteAdapter);
@@ -255,6 +266,9 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
             mAutoSaveHandler.removeCallbacks(mAutoSaveRunnable);
         }
 
+        mLinkifier.cancel();
+        mMarkdownRenderer.cancel();
+
         if (mPublishTimeoutHandler != null) {
             mPublishTimeoutHandler.removeCallbacks(mPublishTimeoutRunnable);
         }
@@ -323,16 +337,18 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
     }
 
 	protected void clearMarkdown() {
-        mMarkdown.loadDataWithBaseURL("file:///android_asset/", mCss + "", "text/html", "utf-8", null);
+        mMarkdownRenderer.cancel();
+        mMarkdownUpdater.setHtml("");
     }
 
     protected void hideMarkdown() {
+        mMarkdownRenderer.cancel();
         mMarkdown.setVisibility(View.INVISIBLE);
     }
 
     protected void showMarkdown() {
-        loadMarkdownData();
         mMarkdown.setVisibility(View.VISIBLE);
+        loadMarkdownData();
     }
 
     private void shareNote() {
@@ -379,8 +395,16 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
     }
 
     private void loadMarkdownData() {
-        mMarkdown.loadDataWithBaseURL("file:///android_asset/", mCss +
-                new AndDown().markdownToHtml(getNoteContentString()), "text/html", "utf-8", null);
+        // the markdown is rendered again when it's shown
+        if (mMarkdown == null || mMarkdown.getVisibility() != View.VISIBLE) return;
+
+        String noteKey = mNote != null ? mNote.getSimperiumKey() : null;
+        mMarkdownRenderer.render(noteKey, getNoteContentString(), new MarkdownRenderer.OnRenderedListener() {
+            @Override
+            public void onRendered(String html) {
+                mMarkdownUpdater.setHtml(html);
+            }
+        });
     }
 
     public void setNote(String noteID){
@@ -422,7 +446,9 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
 
             int cursorPosition = newCursorLocation(mNote.getContent(), getNoteContentString(), mContentEditText.getSelectionEnd());
 
+            mTitleSpanTracker.reset();
             mContentEditText.setText(mNote.getContent());
+            mSavedContentGeneration = mContentGeneration;
 
             if (isNoteUpdate) {
                 // Save the note so any local changes get synced
@@ -522,11 +548,14 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
     @Override
     public void afterTextChanged(Editable editable) {
             attemptAutoList(editable);
-            setTitleSpan(editable);
+            mTitleSpanTracker.apply(editable);
     }
 
     @Override
     public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
+        mContentGeneration++;
+        mTitleSpanTracker.onTextChanged(charSequence, start, before, count);
+        mLinkifier.onTextChanged(start, before, count);
 
         // When text changes, start timer that will fire after AUTOSAVE_DELAY_MILLIS passes
         if (mAutoSaveHandler != null) {
@@ -541,19 +570,6 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
         }
     }
 
-    private void setTitleSpan(Editable editable) {
-        // Set the note title to be a larger size
-        // Remove any existing size spans
-        RelativeSizeSpan spans[] = editable.getSpans(0, editable.length(), RelativeSizeSpan.class);
-        for (RelativeSizeSpan span : spans) {
-            editable.removeSpan(span);
-        }
-        int newLinePosition = getNoteContentString().indexOf("\n");
-        if (newLinePosition == 0)
-            return;
-        editable.setSpan(new RelativeSizeSpan(1.227f), 0, (newLinePosition > 0) ? newLinePosition : editable.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
-    }
-
     private void attemptAutoList(Editable editable) {
         int oldCursorPosition = mCurrentCursorPosition;
         mCurrentCursorPosition = mContentEditText.getSelectionStart();
@@ -802,7 +818,9 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
 
             getActivity().invalidateOptionsMenu();
 
-            SimplenoteLinkify.addLinks(mContentEditText, Linkify.ALL);
+            // the text was set before edits were reported to the linkifier
+            mLinkifier.invalidate(mContentEditText.getText());
+            mLinkifier.addLinks(mContentEditText);
 
             mIsLoadingNote = false;
         }
@@ -819,8 +837,8 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
         @Override
         protected void onPostExecute(Void nada) {
             if (getActivity() != null && !getActivity().isFinishing()) {
-                // Update links
-                SimplenoteLinkify.addLinks(mContentEditText, Linkify.ALL);
+                // Update links of the edited paragraphs
+                mLinkifier.addLinks(mContentEditText);
 
                 // Update markdown fragment
                 if (DisplayUtils.isLargeScreenLandscape(getActivity())) {
@@ -837,8 +855,12 @@ public class NoteEditorFragment extends Fragment implements Bucket.Listener<Note
             return;
         }
 
-        String content = getNoteContentString();
+        // The content can only differ from the note's if it was edited since it was last saved or
+        // loaded, otherwise the note's own string is compared with itself
+        int contentGeneration = mContentGeneration;
+        String content = contentGeneration != mSavedContentGeneration ? getNoteContentString() : mNote.getContent();
         String tagString = getNoteTagsString();
+        mSavedContentGeneration = contentGeneration;
         if (mNote.hasChanges(content, tagString.trim(), mNote.isPinned(), mIsMarkdownEnabled)) {
             mNote.setContent(content);
             mNote.setTagString(tagString);
@@ -3,7 +3,6 @@ package com.automattic.simplenote;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -13,7 +12,9 @@ import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.ListFragment;
 import android.text.Html;
 import android.text.SpannableString;
+import android.text.TextUtils;
 import android.text.style.TextAppearanceSpan;
+import android.util.LruCache;
 import android.util.SparseBooleanArray;
 import android.util.TypedValue;
 import android.view.ActionMode;
@@ -25,7 +26,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.AdapterView;
-import android.widget.CursorAdapter;
+import android.widget.BaseAdapter;
 import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -33,6 +34,7 @@ import android.widget.ToggleButton;
 
 import com.automattic.simplenote.analytics.AnalyticsTracker;
 import com.automattic.simplenote.models.Note;
+import com.automattic.simplenote.models.NoteBatch;
 import com.automattic.simplenote.utils.DisplayUtils;
 import com.automattic.simplenote.utils.DrawableUtils;
 import com.automattic.simplenote.utils.NoteUtils;
@@ -40,15 +42,28 @@ import com.automattic.simplenote.utils.PrefUtils;
 import com.automattic.simplenote.utils.SearchSnippetFormatter;
 import com.automattic.simplenote.utils.SearchTokenizer;
 import com.automattic.simplenote.utils.StrUtils;
+import com.automattic.simplenote.utils.TagsAdapter;
 import com.automattic.simplenote.utils.TextHighlighter;
 import com.simperium.client.Bucket;
 import com.simperium.client.Bucket.ObjectCursor;
+import com.simperium.client.BucketObjectMissingException;
 import com.simperium.client.Query;
 import com.simperium.client.Query.SortType;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A list fragment representing a list of Notes. This fragment also supports
@@ -63,7 +78,7 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 
     private ActionMode mActionMode;
 
-	protected NotesCursorAdapter mNotesAdapter;
+	protected NotesAdapter mNotesAdapter;
 
     private View mRootView;
     private TextView mEmptyListTextView;
@@ -71,8 +86,19 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
     private FloatingActionButton mFloatingActionButton;
 	private int mNumPreviewLines;
     protected String mSearchString;
+    private final Handler mSearchHandler = new Handler();
+    private Runnable mPendingSearch;
+    // Incremented whenever the rows are about to be replaced, so slower results for an older list are dropped
+    private int mListGeneration;
     private String mSelectedNoteId;
     private refreshListTask mRefreshListTask;
+    private loadPageTask mLoadPageTask;
+    private Bucket<Note> mNotesBucket;
+    // Only holds colors so it's safe to build snippet spans with it on background threads
+    private SearchSnippetFormatter.SpanFactory mSnippetHighlighter;
+
+    // Notes that changed while a full refresh was running, patched in once it completes
+    private final Set<String> mPendingNoteKeys = new LinkedHashSet<>();
 
     private int mTitleFontSize;
     private int mPreviewFontSize;
@@ -82,6 +108,22 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 	 */
 	private static final String STATE_ACTIVATED_POSITION = "activated_position";
 
+    // Batches larger than this refresh the whole list rather than loading each note
+    private static final int MAX_PATCHED_NOTES = 50;
+
+    // Notes are read from the query a page at a time, the next page loads as the list nears its end
+    private static final int PAGE_SIZE = 100;
+    private static final int PAGE_PREFETCH_ROWS = 20;
+
+    // Keystrokes within this window only run the last search
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+
+    // Recent search results, kept across fragment instances so rotating or repeating a search doesn't query again
+    private static final int SEARCH_CACHE_SIZE = 8;
+    private static final LruCache<String, SearchResults> sSearchResults = new LruCache<>(SEARCH_CACHE_SIZE);
+    // Incremented by every change to the notes bucket, results loaded while a note changed aren't cached
+    private static final AtomicInteger sNotesVersion = new AtomicInteger();
+
 	/**
 	 * The fragment's current callback object, which is notified of list item
 	 * clicks.
@@ -195,7 +237,12 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
-		mNotesAdapter = new NotesCursorAdapter(getActivity().getBaseContext(), null, 0);
+		Simplenote application = (Simplenote) getActivity().getApplication();
+		mNotesBucket = application.getNotesBucket();
+		mSnippetHighlighter = new TextHighlighter(getActivity(),
+				R.attr.listSearchHighlightForegroundColor, R.attr.listSearchHighlightBackgroundColor);
+
+		mNotesAdapter = new NotesAdapter();
 		setListAdapter(mNotesAdapter);
 	}
 
@@ -255,6 +302,18 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 
         getListView().setOnItemLongClickListener(this);
         getListView().setMultiChoiceModeListener(this);
+        getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_PREFETCH_ROWS) {
+                    loadNextPage();
+                }
+            }
+        });
 	}
 
 	@Override
@@ -288,6 +347,7 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
     @Override
     public void onDestroy(){
         super.onDestroy();
+        mSearchHandler.removeCallbacks(mPendingSearch);
     }
 
     public void setEmptyListMessage(String message) {
@@ -303,7 +363,7 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
         NoteViewHolder holder = (NoteViewHolder)view.getTag();
         String noteID = holder.getNoteId();
         if (noteID != null) {
-            mCallbacks.onNoteSelected(noteID, position, false, holder.matchOffsets, mNotesAdapter.getItem(position).isMarkdownEnabled());
+            new selectNoteTask(noteID, position, holder.matchOffsets).execute();
         }
 
         mActivatedPosition = position;
@@ -314,8 +374,7 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
      */
     public void selectFirstNote() {
         if (mNotesAdapter.getCount() > 0) {
-            Note selectedNote = mNotesAdapter.getItem(0);
-            mCallbacks.onNoteSelected(selectedNote.getSimperiumKey(), 0, false, null, selectedNote.isMarkdownEnabled());
+            new selectNoteTask(mNotesAdapter.getNoteKey(0), 0, null).execute();
         }
     }
 
@@ -379,15 +438,242 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
         if (mRefreshListTask != null && mRefreshListTask.getStatus() != AsyncTask.Status.FINISHED)
             mRefreshListTask.cancel(true);
 
+        // A page read from the old query would have the wrong offset once the new one finishes
+        if (mLoadPageTask != null && mLoadPageTask.getStatus() != AsyncTask.Status.FINISHED)
+            mLoadPageTask.cancel(true);
+
+        mListGeneration++;
+
+        if (hasSearchQuery()) {
+            SearchResults results = sSearchResults.get(getSearchResultsKey(mSearchString));
+            if (results != null) {
+                mRefreshListTask = null;
+                onRowsLoaded(new ArrayList<>(results.rows), results.hasMoreRows, fromNav);
+                return;
+            }
+
+            if (isKnownEmptySearch(mSearchString)) {
+                mRefreshListTask = null;
+                cacheSearchResults(getSearchResultsKey(mSearchString), mSearchString, sNotesVersion.get(),
+                        new ArrayList<NoteRow>(), false);
+                onRowsLoaded(new ArrayList<NoteRow>(), false, fromNav);
+                return;
+            }
+        }
+
         mRefreshListTask = new refreshListTask();
         mRefreshListTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, fromNav);
     }
 
+    /**
+     * Drops every cached search result, e.g. when the theme changes the colors of the snippets
+     */
+    public static void clearSearchResults() {
+        sNotesVersion.incrementAndGet();
+        sSearchResults.evictAll();
+    }
+
+    /**
+     * Drops the cached search results that could include the note: those that list it and those
+     * whose search could now match it
+     *
+     * @param note  the note as it is now, or null if it was deleted
+     */
+    private static void invalidateSearchResults(String noteKey, Note note) {
+        sNotesVersion.incrementAndGet();
+
+        String title = null;
+        String content = null;
+        for (Map.Entry<String, SearchResults> entry : sSearchResults.snapshot().entrySet()) {
+            SearchResults results = entry.getValue();
+            boolean couldInclude = results.containsNote(noteKey);
+
+            if (!couldInclude && note != null) {
+                if (title == null) {
+                    // the full text index only folds the case of ASCII letters, whatever the locale
+                    title = note.getTitle().toLowerCase(Locale.US);
+                    content = note.getContent().toLowerCase(Locale.US);
+                }
+                couldInclude = results.couldMatch(title, content);
+            }
+
+            if (couldInclude) {
+                sSearchResults.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static void invalidateSearchResults(Bucket<Note> bucket, String noteKey) {
+        try {
+            invalidateSearchResults(noteKey, bucket.get(noteKey));
+        } catch (BucketObjectMissingException e) {
+            invalidateSearchResults(noteKey, null);
+        }
+    }
+
+    /**
+     * Invalidates the cached search results affected by each note that is saved, deleted or
+     * changed over the network. Notes are saved every few seconds while they're edited, so
+     * results that can't include the note are kept.
+     */
+    public static class SearchResultsInvalidator implements Bucket.Listener<Note>, NoteBatch.Listener {
+
+        @Override
+        public void onSaveObject(Bucket<Note> bucket, Note note) {
+            if (NoteBatch.isHeld(note.getSimperiumKey())) return;
+
+            invalidateSearchResults(note.getSimperiumKey(), note);
+        }
+
+        @Override
+        public void onBatchCommitted(Bucket<Note> bucket, Set<String> noteKeys) {
+            for (String noteKey : noteKeys) {
+                invalidateSearchResults(bucket, noteKey);
+            }
+        }
+
+        @Override
+        public void onDeleteObject(Bucket<Note> bucket, Note note) {
+            invalidateSearchResults(note.getSimperiumKey(), null);
+        }
+
+        @Override
+        public void onNetworkChange(Bucket<Note> bucket, Bucket.ChangeType type, String key) {
+            if (type == Bucket.ChangeType.INDEX || key == null) {
+                clearSearchResults();
+            } else {
+                invalidateSearchResults(bucket, key);
+            }
+        }
+
+        @Override
+        public void onBeforeUpdateObject(Bucket<Note> bucket, Note note) {
+            // noop
+        }
+    }
+
+    private String getSearchResultsKey(String searchQuery) {
+        NotesActivity notesActivity = (NotesActivity) getActivity();
+        TagsAdapter.TagMenuItem selectedTag = notesActivity.getSelectedTag();
+        int sortPref = PrefUtils.getIntPref(notesActivity, PrefUtils.PREF_SORT_ORDER);
+
+        return new SearchTokenizer(searchQuery).toString() + '\n' + selectedTag.id + ':' + selectedTag.name +
+                '\n' + sortPref;
+    }
+
+    /**
+     * Whether a cached search that matched nothing is narrowed by the search, e.g. "recipx"
+     * after "recip". Rows can't be narrowed from earlier results that did match notes, since
+     * their match offsets and snippets are those of the earlier terms.
+     */
+    private boolean isKnownEmptySearch(String searchQuery) {
+        String key = getSearchResultsKey(searchQuery);
+        // the tag and sort order the search is limited to
+        String scope = key.substring(key.indexOf('\n'));
+
+        for (Map.Entry<String, SearchResults> entry : sSearchResults.snapshot().entrySet()) {
+            SearchResults results = entry.getValue();
+            if (results.rows.isEmpty() && !results.hasMoreRows && entry.getKey().endsWith(scope) &&
+                    results.isNarrowedBy(searchQuery)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void cacheSearchResults(String key, String searchQuery, int notesVersion, List<NoteRow> rows, boolean hasMoreRows) {
+        // a change arrived while the rows were loading so they may already be out of date
+        if (key == null || notesVersion != sNotesVersion.get()) return;
+
+        sSearchResults.put(key, new SearchResults(searchQuery, new ArrayList<>(rows), hasMoreRows));
+    }
+
+    /**
+     * Reads the next page of notes from the query if the list hasn't loaded all of them yet
+     */
+    private void loadNextPage() {
+        if (!isAdded() || !mNotesAdapter.hasMoreRows()) return;
+
+        if ((mRefreshListTask != null && mRefreshListTask.getStatus() != AsyncTask.Status.FINISHED) ||
+                (mLoadPageTask != null && mLoadPageTask.getStatus() != AsyncTask.Status.FINISHED))
+            return;
+
+        mLoadPageTask = new loadPageTask();
+        mLoadPageTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, mNotesAdapter.getNextPageOffset());
+    }
+
     public void refreshListFromNavSelect() {
         refreshList(true);
     }
 
+    /**
+     * Updates the row of a single note that was saved, deleted or changed over the network
+     * instead of re-running the notes query. Falls back to {@link #refreshList()} when the
+     * list can't be patched in place.
+     */
+    public void refreshNote(String noteKey) {
+        if (noteKey == null) {
+            refreshList();
+            return;
+        }
+
+        refreshNotes(Collections.singleton(noteKey));
+    }
+
+    /**
+     * Updates the rows of a batch of changed notes with a single background task. Large
+     * batches are cheaper to load with the notes query, so they refresh the whole list.
+     */
+    public void refreshNotes(Collection<String> noteKeys) {
+        if (!isAdded() || noteKeys.isEmpty()) return;
+
+        Comparator<NoteRow> comparator = getRowComparator();
+        if (comparator == null || hasSearchQuery() || noteKeys.size() > MAX_PATCHED_NOTES) {
+            // Full text matches and alphabetical ordering can only be computed by the query
+            refreshList();
+            return;
+        }
+
+        if (mRefreshListTask != null && mRefreshListTask.getStatus() != AsyncTask.Status.FINISHED) {
+            // The running query may or may not include these changes, so patch them in afterwards
+            mPendingNoteKeys.addAll(noteKeys);
+            return;
+        }
+
+        NotesActivity notesActivity = (NotesActivity) getActivity();
+        new refreshNoteTask(notesActivity.getSelectedTag(), comparator)
+                .executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, noteKeys.toArray(new String[noteKeys.size()]));
+    }
+
+    /**
+     * Orders rows the same way {@link #sortNoteQuery(Query)} orders the query. Returns null
+     * for the alphabetical sort orders since rows don't carry the full note content.
+     */
+    private Comparator<NoteRow> getRowComparator() {
+        int sortPref = PrefUtils.getIntPref(getActivity(), PrefUtils.PREF_SORT_ORDER);
+        switch (sortPref) {
+            case 0:
+                return new NoteRowComparator(false, false);
+            case 1:
+                return new NoteRowComparator(false, true);
+            case 2:
+                return new NoteRowComparator(true, false);
+            case 3:
+                return new NoteRowComparator(true, true);
+            default:
+                return null;
+        }
+    }
+
     public ObjectCursor<Note> queryNotes() {
+        return queryNotes(-1, 0);
+    }
+
+    /**
+     * Queries the notes in the selected tag, reading at most limit rows starting at offset.
+     * A negative limit reads every note.
+     */
+    public ObjectCursor<Note> queryNotes(int limit, int offset) {
         if (!isAdded()) return null;
 
         NotesActivity notesActivity = (NotesActivity)getActivity();
@@ -403,10 +689,15 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
             query.include(Note.TITLE_INDEX_NAME, Note.CONTENT_PREVIEW_INDEX_NAME);
         }
 
-        query.include(Note.PINNED_INDEX_NAME);
+        query.include(Note.PINNED_INDEX_NAME, Note.MODIFIED_INDEX_NAME, Note.CREATED_INDEX_NAME);
 
         sortNoteQuery(query);
 
+        if (limit >= 0) {
+            query.limit(limit);
+            query.offset(offset);
+        }
+
         return query.execute();
     }
 
@@ -448,44 +739,192 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 	}
 
     public void setNoteSelected(String selectedNoteID) {
-        // Loop through notes and set note selected if found
-        //noinspection unchecked
-        ObjectCursor<Note> cursor = (ObjectCursor<Note>) mNotesAdapter.getCursor();
-        if (cursor != null) {
-            for (int i = 0; i < cursor.getCount(); i++) {
-                cursor.moveToPosition(i);
-                String noteKey = cursor.getSimperiumKey();
-                if (noteKey != null && noteKey.equals(selectedNoteID)) {
-                    setActivatedPosition(i);
-                    return;
-                }
-            }
+        // Set note selected if it is in the list
+        int position = mNotesAdapter.getPosition(selectedNoteID);
+        if (position != ListView.INVALID_POSITION) {
+            setActivatedPosition(position);
+            return;
         }
 
-        // Didn't find the note, let's try again after the cursor updates (see refreshListTask)
+        // Didn't find the note, let's try again after the list updates (see refreshListTask)
         mSelectedNoteId = selectedNoteID;
     }
 
-	public class NotesCursorAdapter extends CursorAdapter {
-        private ObjectCursor<Note> mCursor;
+	public class NotesAdapter extends BaseAdapter {
+        private List<NoteRow> mRows = new ArrayList<>();
+        // Position of each note key in mRows, rebuilt whenever the rows change
+        private Map<String, Integer> mPositions = new HashMap<>();
+        private Map<String, Long> mRowIds = new HashMap<>();
+        private long mNextRowId;
+
+        private final String mUntitledString = getString(R.string.new_note_list);
+        private SpannableString mUntitledText;
+
+        // Whether the query has rows past the last loaded page
+        private boolean mHasMoreRows;
+        // Rows inserted by updateRows() that weren't loaded from the query, see getNextPageOffset()
+        private int mInsertedRowCount;
+
+        public void setRows(List<NoteRow> rows, boolean hasMoreRows) {
+            mRows = rows;
+            mHasMoreRows = hasMoreRows;
+            mInsertedRowCount = 0;
+
+            // Forget the ids of notes that left the list, the others keep theirs
+            Map<String, Long> rowIds = new HashMap<>(rows.size());
+            for (NoteRow row : rows) {
+                Long id = mRowIds.get(row.key);
+                if (id != null) {
+                    rowIds.put(row.key, id);
+                }
+            }
+            mRowIds = rowIds;
+
+            indexPositions();
+            notifyDataSetChanged();
+        }
+
+        /**
+         * Adds a page of rows read from the query to the end of the list, skipping notes
+         * that are already in it
+         */
+        public void appendRows(List<NoteRow> rows, boolean hasMoreRows) {
+            for (NoteRow row : rows) {
+                if (!mPositions.containsKey(row.key)) {
+                    mPositions.put(row.key, mRows.size());
+                    mRows.add(row);
+                }
+            }
+
+            mHasMoreRows = hasMoreRows;
+            mInsertedRowCount = 0;
+            notifyDataSetChanged();
+        }
+
+        /**
+         * The rows that already have formatted search snippets, so a refresh of the same search
+         * can reuse them for notes that haven't changed
+         */
+        public Map<String, NoteRow> getFormattedRows() {
+            Map<String, NoteRow> formattedRows = new HashMap<>();
+            for (NoteRow row : mRows) {
+                if (row.formattedTitle != null) {
+                    formattedRows.put(row.key, row);
+                }
+            }
+            return formattedRows;
+        }
+
+        private CharSequence getUntitledText() {
+            if (mUntitledText == null) {
+                mUntitledText = new SpannableString(mUntitledString);
+                mUntitledText.setSpan(new TextAppearanceSpan(getActivity(), R.style.UntitledNoteAppearance), 0, mUntitledText.length(), 0x0);
+            }
+            return mUntitledText;
+        }
 
-        private SearchSnippetFormatter.SpanFactory mSnippetHighlighter = new TextHighlighter(getActivity(),
-            R.attr.listSearchHighlightForegroundColor, R.attr.listSearchHighlightBackgroundColor);
+        public boolean hasMoreRows() {
+            return mHasMoreRows;
+        }
 
-        public NotesCursorAdapter(Context context, ObjectCursor<Note> c, int flags) {
-            super(context, c, flags);
-            mCursor = c;
+        /**
+         * The query offset of the next page. A note that moved into the loaded rows from a page
+         * that hasn't been read yet shifts the query without changing its length, so the offset
+         * errs towards reading rows again, which {@link #appendRows} skips, rather than missing
+         * one.
+         */
+        public int getNextPageOffset() {
+            return Math.max(0, mRows.size() - mInsertedRowCount);
         }
 
-        public void changeCursor(ObjectCursor<Note> cursor){
-            mCursor = cursor;
-            super.changeCursor(cursor);
+        /**
+         * Removes the rows of the note keys and, for each note that still belongs in the list,
+         * inserts its new row at the position the comparator sorts it to. The old rows are
+         * removed in a single pass and observers are notified once for the whole batch.
+         */
+        public void updateRows(Map<String, NoteRow> rows, Comparator<NoteRow> comparator) {
+            Set<String> listedKeys = new HashSet<>();
+            List<NoteRow> keptRows = new ArrayList<>(mRows.size());
+            for (NoteRow row : mRows) {
+                if (rows.containsKey(row.key)) {
+                    listedKeys.add(row.key);
+                } else {
+                    keptRows.add(row);
+                }
+            }
+            mRows = keptRows;
+
+            for (Map.Entry<String, NoteRow> entry : rows.entrySet()) {
+                NoteRow row = entry.getValue();
+                if (row == null) continue;
+
+                int position = Collections.binarySearch(mRows, row, comparator);
+                if (position < 0) {
+                    position = -(position + 1);
+                }
+
+                // Rows sorted past the loaded pages arrive with a later page
+                if (mHasMoreRows && position == mRows.size()) continue;
+
+                mRows.add(position, row);
+                if (!listedKeys.contains(entry.getKey())) {
+                    mInsertedRowCount++;
+                }
+            }
+
+            indexPositions();
+            notifyDataSetChanged();
+        }
+
+        private void indexPositions() {
+            Map<String, Integer> positions = new HashMap<>(mRows.size());
+            for (int i = 0; i < mRows.size(); i++) {
+                positions.put(mRows.get(i).key, i);
+            }
+            mPositions = positions;
+        }
+
+        public int getPosition(String noteKey) {
+            if (noteKey == null) return ListView.INVALID_POSITION;
+
+            Integer position = mPositions.get(noteKey);
+            return position != null ? position : ListView.INVALID_POSITION;
+        }
+
+        public String getNoteKey(int position) {
+            if (position < 0 || position >= mRows.size()) return null;
+
+            return mRows.get(position).key;
+        }
+
+        @Override
+        public int getCount() {
+            return mRows.size();
+        }
+
+        /**
+         * The row at the position, notes are only read from the bucket off the UI thread
+         */
+        @Override
+        public NoteRow getItem(int position) {
+            return mRows.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            // Row ids have to stay the same while rows move around for the checked item ids
+            String noteKey = mRows.get(position).key;
+            Long id = mRowIds.get(noteKey);
+            if (id == null) {
+                id = mNextRowId++;
+                mRowIds.put(noteKey, id);
+            }
+            return id;
         }
 
         @Override
-        public Note getItem(int position) {
-            mCursor.moveToPosition(position);
-            return mCursor.getObject();
+        public boolean hasStableIds() {
+            return true;
         }
 
         /*
@@ -501,6 +940,19 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 				holder.titleTextView = (TextView) view.findViewById(R.id.note_title);
 				holder.contentTextView = (TextView) view.findViewById(R.id.note_content);
 				holder.toggleView = (ToggleButton) view.findViewById(R.id.pin_button);
+				// the listener looks up the note the holder is bound to so it's created once per view
+				holder.toggleView.setOnClickListener(new View.OnClickListener() {
+					@Override
+					public void onClick(View v) {
+						if (holder.getNoteId() == null) return;
+						try {
+							Note note = mNotesBucket.get(holder.getNoteId());
+							NoteUtils.setNotePin(note, holder.toggleView.isChecked());
+						} catch (BucketObjectMissingException e) {
+							// note was deleted
+						}
+					}
+				});
 				view.setTag(holder);
 			} else {
 				holder = (NoteViewHolder) view.getTag();
@@ -516,59 +968,42 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
             else
                 view.setActivated(false);
 
-            // for performance reasons we are going to get indexed values
-            // from the cursor instead of instantiating the entire bucket object
+            // rows only hold indexed values so we don't instantiate the entire bucket object
             holder.contentTextView.setVisibility(View.VISIBLE);
             holder.contentTextView.setMaxLines(mNumPreviewLines);
-            mCursor.moveToPosition(position);
-            holder.setNoteId(mCursor.getSimperiumKey());
-            int pinned = mCursor.getInt(mCursor.getColumnIndex(Note.PINNED_INDEX_NAME));
+            NoteRow row = mRows.get(position);
+            holder.setNoteId(row.key);
 
-            if (pinned == 1) {
+            if (row.pinned) {
                 holder.toggleView.setChecked(true);
                 holder.toggleView.setVisibility(View.VISIBLE);
             } else {
                 holder.toggleView.setVisibility(View.GONE);
             }
-            holder.toggleView.setOnClickListener(new View.OnClickListener() {
-                 @Override
-                 public void onClick(View v) {
-                    Note note = mNotesAdapter.getItem(position);
-                    NoteUtils.setNotePin(note, holder.toggleView.isChecked());
-                 }
-             });
 
-            String title = mCursor.getString(mCursor.getColumnIndex(Note.TITLE_INDEX_NAME));
+            String title = row.title;
 
             if (title == null || title.equals("")) {
-                SpannableString untitled = new SpannableString(getString(R.string.new_note_list));
-                untitled.setSpan(new TextAppearanceSpan(getActivity(), R.style.UntitledNoteAppearance), 0, untitled.length(), 0x0);
-                holder.titleTextView.setText(untitled);
+                holder.titleTextView.setText(getUntitledText());
             } else {
                 holder.titleTextView.setText(title);
             }
 
             holder.matchOffsets = null;
 
-            int matchOffsetsIndex = mCursor.getColumnIndex("match_offsets");
-            if (hasSearchQuery() && matchOffsetsIndex != -1) {
-                title = mCursor.getString(mCursor.getColumnIndex(Note.MATCHED_TITLE_INDEX_NAME));
-                String snippet = mCursor.getString(mCursor.getColumnIndex(Note.MATCHED_CONTENT_INDEX_NAME));
+            if (hasSearchQuery() && row.matchOffsets != null) {
+                holder.matchOffsets = row.matchOffsets;
 
-                holder.matchOffsets = mCursor.getString(matchOffsetsIndex);
-
-                try {
-                    holder.contentTextView.setText(SearchSnippetFormatter.formatString(snippet, mSnippetHighlighter));
-                    holder.titleTextView.setText(SearchSnippetFormatter.formatString(title, mSnippetHighlighter));
-                } catch (NullPointerException e) {
-                    title = StrUtils.notNullStr(mCursor.getString(mCursor.getColumnIndex(Note.TITLE_INDEX_NAME)));
-                    holder.titleTextView.setText(title);
-                    String matchedContentPreview = StrUtils.notNullStr(mCursor.getString(mCursor.getColumnIndex(Note.CONTENT_PREVIEW_INDEX_NAME)));
-                    holder.contentTextView.setText(matchedContentPreview);
+                // snippets are normally formatted when the rows are read from the query
+                if (row.formattedTitle == null) {
+                    row.formatSnippets(mSnippetHighlighter);
                 }
+
+                holder.contentTextView.setText(row.formattedContent);
+                holder.titleTextView.setText(row.formattedTitle);
             } else if (mNumPreviewLines > 0) {
-                String contentPreview = mCursor.getString(mCursor.getColumnIndex(Note.CONTENT_PREVIEW_INDEX_NAME));
-                if (title == null || title.equals(contentPreview) || title.equals(getString(R.string.new_note_list)))
+                String contentPreview = row.contentPreview;
+                if (title == null || title.equals(contentPreview) || title.equals(mUntitledString))
                     holder.contentTextView.setVisibility(View.GONE);
                 else
                     holder.contentTextView.setText(contentPreview);
@@ -576,20 +1011,235 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 			
 			return view;
 		}
+	}
 
-        @Override
-        public View newView(Context context, Cursor cursor, ViewGroup viewGroup) {
-            return null;
+    /**
+     * A note as shown in the list. Rows are read from the indexed columns of the notes query,
+     * or built straight from the {@link Note} when a single note changes.
+     */
+    static class NoteRow {
+        final String key;
+        final String title;
+        final String contentPreview;
+        final boolean pinned;
+        final long modified;
+        final long created;
+        String matchOffsets;
+        String matchedTitle;
+        String matchedContent;
+
+        // Highlighted search snippets, reused while the row is unchanged
+        CharSequence formattedTitle;
+        CharSequence formattedContent;
+
+        NoteRow(String key, String title, String contentPreview, boolean pinned, long modified, long created) {
+            this.key = key;
+            this.title = title;
+            this.contentPreview = contentPreview;
+            this.pinned = pinned;
+            this.modified = modified;
+            this.created = created;
         }
 
-        @Override
-        public void bindView(View view, Context context, Cursor cursor) {
+        void formatSnippets(SearchSnippetFormatter.SpanFactory snippetHighlighter) {
+            try {
+                formattedContent = SearchSnippetFormatter.formatSpanned(matchedContent, snippetHighlighter);
+                formattedTitle = SearchSnippetFormatter.formatSpanned(matchedTitle, snippetHighlighter);
+            } catch (NullPointerException e) {
+                formattedTitle = StrUtils.notNullStr(title);
+                formattedContent = StrUtils.notNullStr(contentPreview);
+            }
+        }
 
+        /**
+         * Whether both rows would display the same, in which case the formatted text of one
+         * can be reused for the other
+         */
+        boolean hasSameContent(NoteRow other) {
+            return modified == other.modified &&
+                    TextUtils.equals(title, other.title) &&
+                    TextUtils.equals(contentPreview, other.contentPreview) &&
+                    TextUtils.equals(matchedTitle, other.matchedTitle) &&
+                    TextUtils.equals(matchedContent, other.matchedContent);
         }
 
-	}
+        static NoteRow fromNote(Note note) {
+            // Same values the NoteIndexer stores for the query
+            return new NoteRow(
+                    note.getSimperiumKey(),
+                    note.getTitle(),
+                    note.getContentPreview(),
+                    note.isPinned(),
+                    note.getModificationDate().getTimeInMillis(),
+                    note.getCreationDate().getTimeInMillis()
+            );
+        }
+    }
+
+    /**
+     * The rows loaded for a search, see {@link #sSearchResults}
+     */
+    private static class SearchResults {
+        final List<NoteRow> rows;
+        final boolean hasMoreRows;
+        // Lowercase words of the search, null if it uses syntax other than plain words
+        private final String[] mTerms;
+        private final Set<String> mNoteKeys;
+
+        SearchResults(String searchQuery, List<NoteRow> rows, boolean hasMoreRows) {
+            this.rows = rows;
+            this.hasMoreRows = hasMoreRows;
+            mTerms = getPlainTerms(searchQuery);
+            mNoteKeys = new HashSet<>(rows.size());
+            for (NoteRow row : rows) {
+                mNoteKeys.add(row.key);
+            }
+        }
 
-	// view holder for NotesCursorAdapter
+        boolean containsNote(String noteKey) {
+            return mNoteKeys.contains(noteKey);
+        }
+
+        /**
+         * Whether the search could match a note with the lowercase title and content. The full
+         * text index only matches words that start with each term, so a note that doesn't
+         * contain every term can't match.
+         */
+        boolean couldMatch(String title, String content) {
+            if (mTerms == null) return true;
+
+            for (String term : mTerms) {
+                if (!title.contains(term) && !content.contains(term)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether every note the search matches is matched by this one. Each word of the search
+         * is matched by its prefix, so that's the case when each term of this search is the
+         * start of a term of the other. Only ASCII terms are compared, the full text index
+         * doesn't fold the case of other letters the way toLowerCase() does.
+         */
+        boolean isNarrowedBy(String searchQuery) {
+            String[] terms = getPlainTerms(searchQuery);
+            if (mTerms == null || terms == null || !isAscii(mTerms) || !isAscii(terms)) return false;
+
+            for (String term : mTerms) {
+                boolean isExtended = false;
+                for (String otherTerm : terms) {
+                    if (otherTerm.startsWith(term)) {
+                        isExtended = true;
+                        break;
+                    }
+                }
+                if (!isExtended) return false;
+            }
+            return true;
+        }
+
+        private static boolean isAscii(String[] terms) {
+            for (String term : terms) {
+                for (int i = 0; i < term.length(); i++) {
+                    if (term.charAt(i) > 127) return false;
+                }
+            }
+            return true;
+        }
+
+        private static String[] getPlainTerms(String searchQuery) {
+            String[] terms = searchQuery.trim().split("\\s+");
+            for (int i = 0; i < terms.length; i++) {
+                String term = terms[i];
+                if (term.endsWith("*")) {
+                    term = term.substring(0, term.length() - 1);
+                }
+
+                // operators and anything but letters and digits could match in other ways
+                if (term.isEmpty() || term.equals("OR") || term.equals("AND") || term.equals("NOT") ||
+                        term.equals("NEAR")) {
+                    return null;
+                }
+                for (int j = 0; j < term.length(); j++) {
+                    if (!Character.isLetterOrDigit(term.charAt(j))) return null;
+                }
+
+                terms[i] = term.toLowerCase(Locale.US);
+            }
+            return terms;
+        }
+    }
+
+    /**
+     * The column indexes of a notes query, resolved once per cursor rather than once per row
+     */
+    static class NoteProjection {
+        private final int mTitleIndex;
+        private final int mContentPreviewIndex;
+        private final int mPinnedIndex;
+        private final int mModifiedIndex;
+        private final int mCreatedIndex;
+        private final int mMatchOffsetsIndex;
+        private final int mMatchedTitleIndex;
+        private final int mMatchedContentIndex;
+
+        NoteProjection(ObjectCursor<Note> cursor) {
+            mTitleIndex = cursor.getColumnIndex(Note.TITLE_INDEX_NAME);
+            mContentPreviewIndex = cursor.getColumnIndex(Note.CONTENT_PREVIEW_INDEX_NAME);
+            mPinnedIndex = cursor.getColumnIndex(Note.PINNED_INDEX_NAME);
+            mModifiedIndex = cursor.getColumnIndex(Note.MODIFIED_INDEX_NAME);
+            mCreatedIndex = cursor.getColumnIndex(Note.CREATED_INDEX_NAME);
+            mMatchOffsetsIndex = cursor.getColumnIndex("match_offsets");
+            mMatchedTitleIndex = cursor.getColumnIndex(Note.MATCHED_TITLE_INDEX_NAME);
+            mMatchedContentIndex = cursor.getColumnIndex(Note.MATCHED_CONTENT_INDEX_NAME);
+        }
+
+        NoteRow readRow(ObjectCursor<Note> cursor) {
+            NoteRow row = new NoteRow(
+                    cursor.getSimperiumKey(),
+                    cursor.getString(mTitleIndex),
+                    cursor.getString(mContentPreviewIndex),
+                    cursor.getInt(mPinnedIndex) == 1,
+                    cursor.getLong(mModifiedIndex),
+                    cursor.getLong(mCreatedIndex)
+            );
+
+            if (mMatchOffsetsIndex != -1) {
+                row.matchOffsets = cursor.getString(mMatchOffsetsIndex);
+                row.matchedTitle = cursor.getString(mMatchedTitleIndex);
+                row.matchedContent = cursor.getString(mMatchedContentIndex);
+            }
+
+            return row;
+        }
+    }
+
+    /**
+     * Pinned rows first, then by modification or creation date
+     */
+    private static class NoteRowComparator implements Comparator<NoteRow> {
+        private final boolean mByCreationDate;
+        private final boolean mAscending;
+
+        NoteRowComparator(boolean byCreationDate, boolean ascending) {
+            mByCreationDate = byCreationDate;
+            mAscending = ascending;
+        }
+
+        @Override
+        public int compare(NoteRow lhs, NoteRow rhs) {
+            if (lhs.pinned != rhs.pinned) {
+                return lhs.pinned ? -1 : 1;
+            }
+
+            long left = mByCreationDate ? lhs.created : lhs.modified;
+            long right = mByCreationDate ? rhs.created : rhs.modified;
+            int result = left < right ? -1 : (left == right ? 0 : 1);
+            return mAscending ? result : -result;
+        }
+    }
+	// view holder for NotesAdapter
 	private static class NoteViewHolder {
 		TextView titleTextView;
 		TextView contentTextView;
@@ -607,16 +1257,42 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 	}
 
 	public void searchNotes(String searchString) {
-        if (!searchString.equals(mSearchString)){
-            mSearchString = searchString;
-            refreshList();
-        }
+        searchNotes(searchString, true);
 	}
 
+    /**
+     * Searches the notes list. While typing the search is debounced so only the query the user
+     * pauses on runs.
+     */
+    public void searchNotes(final String searchString, boolean debounce) {
+        mSearchHandler.removeCallbacks(mPendingSearch);
+        mPendingSearch = null;
+
+        if (searchString.equals(mSearchString)) return;
+
+        if (debounce) {
+            mPendingSearch = new Runnable() {
+                @Override
+                public void run() {
+                    mPendingSearch = null;
+                    searchNotes(searchString, false);
+                }
+            };
+            mSearchHandler.postDelayed(mPendingSearch, SEARCH_DEBOUNCE_MS);
+            return;
+        }
+
+        mSearchString = searchString;
+        refreshList();
+    }
+
     /**
      * Clear search and load all notes
      */
     public void clearSearch() {
+        mSearchHandler.removeCallbacks(mPendingSearch);
+        mPendingSearch = null;
+
         if (mSearchString != null && !mSearchString.equals("")){
             mSearchString = null;
             refreshList();
@@ -652,59 +1328,253 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
 		}
     }
 
-    private class refreshListTask extends AsyncTask<Boolean, Void, ObjectCursor<Note>> {
+    /**
+     * Reads every row of the cursor, stopping early if the task is cancelled. Search snippets
+     * are formatted here, off the UI thread, unless an unchanged row from the previous results
+     * already has them.
+     */
+    private static List<NoteRow> readRows(ObjectCursor<Note> cursor, AsyncTask task,
+                                          Map<String, NoteRow> formattedRows,
+                                          SearchSnippetFormatter.SpanFactory snippetHighlighter) {
+        // While using a Query.FullTextMatch it's easy to enter an invalid term so catch the error and clear the list
+        List<NoteRow> rows = new ArrayList<>();
+        try {
+            NoteProjection projection = new NoteProjection(cursor);
+            while (cursor.moveToNext()) {
+                if (task.isCancelled()) break;
+
+                NoteRow row = projection.readRow(cursor);
+                if (row.matchOffsets != null) {
+                    NoteRow formattedRow = formattedRows.get(row.key);
+                    if (formattedRow != null && formattedRow.hasSameContent(row)) {
+                        row.formattedTitle = formattedRow.formattedTitle;
+                        row.formattedContent = formattedRow.formattedContent;
+                    } else {
+                        row.formatSnippets(snippetHighlighter);
+                    }
+                }
+                rows.add(row);
+            }
+        } catch (SQLiteException e) {
+            rows.clear();
+            android.util.Log.e(Simplenote.TAG, "Invalid SQL statement", e);
+        } finally {
+            cursor.close();
+        }
+
+        return rows;
+    }
+
+    /**
+     * Installs freshly loaded rows and restores the selection that goes with them
+     */
+    private void onRowsLoaded(List<NoteRow> rows, boolean hasMoreRows, boolean isFromNavSelect) {
+        mNotesAdapter.setRows(rows, hasMoreRows);
+        int count = mNotesAdapter.getCount();
+
+        NotesActivity notesActivity = (NotesActivity)getActivity();
+        if (notesActivity != null) {
+            if (isFromNavSelect && DisplayUtils.isLargeScreenLandscape(notesActivity)) {
+                    if (count == 0) {
+                        notesActivity.showDetailPlaceholder();
+                    } else {
+                        // Select the first note
+                        selectFirstNote();
+                    }
+            }
+            notesActivity.updateTrashMenuItem();
+        }
+
+        if (mSelectedNoteId != null) {
+            setNoteSelected(mSelectedNoteId);
+            mSelectedNoteId = null;
+        }
+
+        // Patch in the notes that changed while the query was running
+        List<String> pendingNoteKeys = new ArrayList<>(mPendingNoteKeys);
+        mPendingNoteKeys.clear();
+        refreshNotes(pendingNoteKeys);
+    }
+
+    private class refreshListTask extends AsyncTask<Boolean, Void, List<NoteRow>> {
         boolean mIsFromNavSelect;
 
+        // Reload at least as many rows as are loaded now so the list keeps its scroll position
+        private final int mLimit = Math.max(PAGE_SIZE, mNotesAdapter.getCount());
+        private final Map<String, NoteRow> mFormattedRows = mNotesAdapter.getFormattedRows();
+        private final String mSearchQuery = mSearchString;
+        private final int mNotesVersion = sNotesVersion.get();
+        private final String mSearchResultsKey = hasSearchQuery() ? getSearchResultsKey(mSearchString) : null;
+
         @Override
-        protected ObjectCursor<Note> doInBackground(Boolean ... args) {
+        protected List<NoteRow> doInBackground(Boolean ... args) {
             mIsFromNavSelect = args[0];
-            return queryNotes();
+            ObjectCursor<Note> cursor = queryNotes(mLimit, 0);
+            if (cursor == null) return null;
+
+            return readRows(cursor, this, mFormattedRows, mSnippetHighlighter);
         }
 
         @Override
-        protected void onPostExecute(ObjectCursor<Note> cursor) {
-            if (cursor == null || getActivity() == null || getActivity().isFinishing())
+        protected void onPostExecute(List<NoteRow> rows) {
+            if (rows == null || getActivity() == null || getActivity().isFinishing())
                 return;
 
-            // While using a Query.FullTextMatch it's easy to enter an invalid term so catch the error and clear the cursor
-            int count;
-            try {
-                mNotesAdapter.changeCursor(cursor);
-                count = mNotesAdapter.getCount();
-            } catch (SQLiteException e) {
-                count = 0;
-                android.util.Log.e(Simplenote.TAG, "Invalid SQL statement", e);
-                mNotesAdapter.changeCursor(null);
-            }
-
-            NotesActivity notesActivity = (NotesActivity)getActivity();
-            if (notesActivity != null) {
-                if (mIsFromNavSelect && DisplayUtils.isLargeScreenLandscape(notesActivity)) {
-                        if (count == 0) {
-                            notesActivity.showDetailPlaceholder();
-                        } else {
-                            // Select the first note
-                            selectFirstNote();
-                        }
+            boolean hasMoreRows = rows.size() >= mLimit;
+            cacheSearchResults(mSearchResultsKey, mSearchQuery, mNotesVersion, rows, hasMoreRows);
+            onRowsLoaded(rows, hasMoreRows, mIsFromNavSelect);
+        }
+    }
+
+    /**
+     * Appends the next page of the query to the list
+     */
+    private class loadPageTask extends AsyncTask<Integer, Void, List<NoteRow>> {
+
+        @Override
+        protected List<NoteRow> doInBackground(Integer... args) {
+            ObjectCursor<Note> cursor = queryNotes(PAGE_SIZE, args[0]);
+            if (cursor == null) return null;
+
+            return readRows(cursor, this, Collections.<String, NoteRow>emptyMap(), mSnippetHighlighter);
+        }
+
+        @Override
+        protected void onPostExecute(List<NoteRow> rows) {
+            if (rows == null || getActivity() == null || getActivity().isFinishing())
+                return;
+
+            mNotesAdapter.appendRows(rows, rows.size() >= PAGE_SIZE);
+
+            if (mSelectedNoteId != null && mNotesAdapter.getPosition(mSelectedNoteId) != ListView.INVALID_POSITION) {
+                setNoteSelected(mSelectedNoteId);
+                mSelectedNoteId = null;
+            }
+        }
+    }
+
+    /**
+     * Re-reads a batch of notes and moves, inserts or removes their rows in the list
+     */
+    private class refreshNoteTask extends AsyncTask<String, Void, Map<String, NoteRow>> {
+        private final TagsAdapter.TagMenuItem mSelectedTag;
+        private final Comparator<NoteRow> mComparator;
+        private final int mGeneration = mListGeneration;
+        private final int mSortPref = PrefUtils.getIntPref(getActivity(), PrefUtils.PREF_SORT_ORDER);
+
+        refreshNoteTask(TagsAdapter.TagMenuItem selectedTag, Comparator<NoteRow> comparator) {
+            mSelectedTag = selectedTag;
+            mComparator = comparator;
+        }
+
+        @Override
+        protected Map<String, NoteRow> doInBackground(String... keys) {
+            // A null row means the note no longer belongs in the list
+            Map<String, NoteRow> rows = new LinkedHashMap<>(keys.length);
+            for (String key : keys) {
+                NoteRow row = null;
+                try {
+                    Note note = mNotesBucket.get(key);
+                    if (mSelectedTag.contains(note)) {
+                        row = NoteRow.fromNote(note);
+                    }
+                } catch (BucketObjectMissingException e) {
+                    // note was deleted, remove its row
+                }
+                rows.put(key, row);
+            }
+            return rows;
+        }
+
+        @Override
+        protected void onPostExecute(Map<String, NoteRow> rows) {
+            if (getActivity() == null || getActivity().isFinishing())
+                return;
+
+            NotesActivity notesActivity = (NotesActivity) getActivity();
+            if (notesActivity.getSelectedTag() != mSelectedTag || mGeneration != mListGeneration ||
+                    hasSearchQuery() || mSortPref != PrefUtils.getIntPref(notesActivity, PrefUtils.PREF_SORT_ORDER)) {
+                // the list switched tags, searched, re-sorted or reloaded while the notes were loading
+                return;
+            }
+
+            String activatedNoteKey = mNotesAdapter.getNoteKey(getListView().getCheckedItemPosition());
+            boolean wasEmpty = mNotesAdapter.getCount() == 0;
+
+            mNotesAdapter.updateRows(rows, mComparator);
+
+            // Keep the open note activated on tablets as rows move around
+            if (activatedNoteKey != null) {
+                int position = mNotesAdapter.getPosition(activatedNoteKey);
+                if (position != ListView.INVALID_POSITION) {
+                    setActivatedPosition(position);
                 }
+            }
+
+            if (wasEmpty != (mNotesAdapter.getCount() == 0)) {
                 notesActivity.updateTrashMenuItem();
             }
+        }
+    }
 
-            if (mSelectedNoteId != null) {
-                setNoteSelected(mSelectedNoteId);
-                mSelectedNoteId = null;
+    /**
+     * Reads the note of a selected row off the UI thread to tell the callbacks whether it uses
+     * markdown. Selections run one after the other so the last selected note wins.
+     */
+    private class selectNoteTask extends AsyncTask<Void, Void, Note> {
+        private final String mNoteKey;
+        private final int mPosition;
+        private final String mMatchOffsets;
+
+        selectNoteTask(String noteKey, int position, String matchOffsets) {
+            mNoteKey = noteKey;
+            mPosition = position;
+            mMatchOffsets = matchOffsets;
+        }
+
+        @Override
+        protected Note doInBackground(Void... args) {
+            return getNote(mNoteKey);
+        }
+
+        @Override
+        protected void onPostExecute(Note note) {
+            if (!isAdded()) return;
+
+            mCallbacks.onNoteSelected(mNoteKey, mPosition, false, mMatchOffsets, note != null && note.isMarkdownEnabled());
+        }
+    }
+
+    // Keys of the checked rows, read on the UI thread while the rows are where the list has them
+    private List<String> getCheckedNoteKeys() {
+        List<String> noteKeys = new ArrayList<>();
+        SparseBooleanArray checkedRows = getListView().getCheckedItemPositions();
+        for (int i = 0; i < checkedRows.size(); i++) {
+            if (checkedRows.valueAt(i)) {
+                String noteKey = mNotesAdapter.getNoteKey(checkedRows.keyAt(i));
+                if (noteKey != null) noteKeys.add(noteKey);
             }
         }
+        return noteKeys;
+    }
+
+    // Null if the note was deleted, reads from the database so it shouldn't be called on the UI thread
+    private Note getNote(String noteKey) {
+        try {
+            return mNotesBucket.get(noteKey);
+        } catch (BucketObjectMissingException e) {
+            return null;
+        }
     }
 
     private class pinNotesTask extends AsyncTask<Void, Void, Void> {
 
-        private SparseBooleanArray mSelectedRows = new SparseBooleanArray();
+        private List<String> mSelectedNoteKeys = new ArrayList<>();
 
         @Override
         protected void onPreExecute() {
             if (getListView() != null) {
-                mSelectedRows = getListView().getCheckedItemPositions();
+                mSelectedNoteKeys = getCheckedNoteKeys();
             }
         }
 
@@ -714,10 +1584,9 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
             // Get the checked notes and add them to the pinnedNotesList
             // We can't modify the note in this loop because the adapter could change
             List<Note> pinnedNotesList = new ArrayList<>();
-            for (int i = 0; i < mSelectedRows.size(); i++) {
-                if (mSelectedRows.valueAt(i)) {
-                    pinnedNotesList.add(mNotesAdapter.getItem(mSelectedRows.keyAt(i)));
-                }
+            for (String noteKey : mSelectedNoteKeys) {
+                Note note = getNote(noteKey);
+                if (note != null) pinnedNotesList.add(note);
             }
 
             // Now loop through the notes list and mark them as pinned
@@ -741,12 +1610,12 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
     private class trashNotesTask extends AsyncTask<Void, Void, Void> {
 
         private List<String> mDeletedNoteIds = new ArrayList<>();
-        private SparseBooleanArray mSelectedRows = new SparseBooleanArray();
+        private List<String> mSelectedNoteKeys = new ArrayList<>();
 
         @Override
         protected void onPreExecute() {
             if (getListView() != null) {
-                mSelectedRows = getListView().getCheckedItemPositions();
+                mSelectedNoteKeys = getCheckedNoteKeys();
             }
         }
 
@@ -756,10 +1625,9 @@ public class NoteListFragment extends ListFragment implements AdapterView.OnItem
             // Get the checked notes and add them to the deletedNotesList
             // We can't modify the note in this loop because the adapter could change
             List<Note> deletedNotesList = new ArrayList<>();
-            for (int i = 0; i < mSelectedRows.size(); i++) {
-                if (mSelectedRows.valueAt(i)) {
-                    deletedNotesList.add(mNotesAdapter.getItem(mSelectedRows.keyAt(i)));
-                }
+            for (String noteKey : mSelectedNoteKeys) {
+                Note note = getNote(noteKey);
+                if (note != null) deletedNotesList.add(note);
             }
 
             // Now loop through the notes list and mark them as deleted
@@ -16,9 +16,10 @@ import android.webkit.WebView;
 import com.automattic.simplenote.analytics.AnalyticsTracker;
 import com.automattic.simplenote.models.Note;
 import com.automattic.simplenote.utils.DrawableUtils;
+import com.automattic.simplenote.utils.MarkdownPreviewUpdater;
+import com.automattic.simplenote.utils.MarkdownRenderer;
 import com.automattic.simplenote.utils.NoteUtils;
 import com.automattic.simplenote.utils.PrefUtils;
-import com.commonsware.cwac.anddown.AndDown;
 import com.simperium.client.Bucket;
 import com.simperium.client.BucketObjectMissingException;
 
@@ -27,9 +28,14 @@ import java.util.Calendar;
 public class NoteMarkdownFragment extends Fragment {
     private Note mNote;
     private String mCss;
-    private WebView mMarkdown;
+    private MarkdownPreviewUpdater mPreviewUpdater;
     private boolean mIsLoadingNote;
 
+    private final MarkdownRenderer mRenderer = new MarkdownRenderer();
+    private String mNoteKey;
+    // Content that hasn't been rendered yet because the preview wasn't visible
+    private String mPendingContent;
+
     public static final int THEME_LIGHT = 0;
     public static final int THEME_DARK = 1;
 
@@ -65,13 +71,13 @@ public class NoteMarkdownFragment extends Fragment {
 
         if (arguments != null && arguments.containsKey(ARG_ITEM_ID)) {
             String key = arguments.getString(ARG_ITEM_ID);
+            mNoteKey = key;
             new loadNoteTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, key);
         }
 
         setHasOptionsMenu(true);
 
         View layout = inflater.inflate(R.layout.fragment_note_markdown, container, false);
-        mMarkdown = (WebView) layout.findViewById(R.id.markdown);
 
         switch (PrefUtils.getIntPref(getActivity(), PrefUtils.PREF_THEME, THEME_LIGHT)) {
             case THEME_DARK:
@@ -82,9 +88,31 @@ public class NoteMarkdownFragment extends Fragment {
                 break;
         }
 
+        mPreviewUpdater = new MarkdownPreviewUpdater((WebView) layout.findViewById(R.id.markdown), mCss);
+        renderPendingContent();
+
         return layout;
     }
 
+    @Override
+    public void onDestroyView() {
+        mRenderer.cancel();
+        mPreviewUpdater = null;
+        super.onDestroyView();
+    }
+
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+
+        if (isVisibleToUser) {
+            renderPendingContent();
+        } else {
+            // the pending content is rendered again when the preview is shown
+            mRenderer.cancel();
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
@@ -118,9 +146,30 @@ public class NoteMarkdownFragment extends Fragment {
         super.onPrepareOptionsMenu(menu);
     }
 
+    /**
+     * Shows the rendered content, which is only rendered once the preview is visible
+     */
     public void updateMarkdown(String text) {
-        mMarkdown.loadDataWithBaseURL("file:///android_asset/", mCss +
-                new AndDown().markdownToHtml(text), "text/html", "utf-8", null);
+        mPendingContent = text;
+        renderPendingContent();
+    }
+
+    private void renderPendingContent() {
+        if (mPendingContent == null || mPreviewUpdater == null || !getUserVisibleHint()) return;
+
+        final String content = mPendingContent;
+        mRenderer.render(mNoteKey, content, new MarkdownRenderer.OnRenderedListener() {
+            @Override
+            public void onRendered(String html) {
+                if (mPreviewUpdater == null) return;
+
+                if (content.equals(mPendingContent)) {
+                    mPendingContent = null;
+                }
+
+                mPreviewUpdater.setHtml(html);
+            }
+        });
     }
 
     private class loadNoteTask extends AsyncTask<String, Void, Void> {
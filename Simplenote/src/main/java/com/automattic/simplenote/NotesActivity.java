@@ -39,8 +39,10 @@ import android.widget.TextView;
 
 import com.automattic.simplenote.analytics.AnalyticsTracker;
 import com.automattic.simplenote.models.Note;
+import com.automattic.simplenote.models.NoteBatch;
 import com.automattic.simplenote.models.Tag;
 import com.automattic.simplenote.utils.AniUtils;
+import com.automattic.simplenote.utils.ChangeCoalescer;
 import com.automattic.simplenote.utils.DisplayUtils;
 import com.automattic.simplenote.utils.DrawableUtils;
 import com.automattic.simplenote.utils.PrefUtils;
@@ -62,6 +64,7 @@ import org.wordpress.passcodelock.AppLockManager;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Set;
 
 public class NotesActivity extends AppCompatActivity implements
         NoteListFragment.Callbacks, User.StatusChangeListener, Simperium.OnUserCreatedListener, UndoBarController.UndoListener,
@@ -177,6 +180,7 @@ public class NotesActivity extends AppCompatActivity implements
         mNotesBucket.addOnNetworkChangeListener(this);
         mNotesBucket.addOnSaveObjectListener(this);
         mNotesBucket.addOnDeleteObjectListener(this);
+        NoteBatch.addListener(mNoteBatchListener);
         mTagsBucket.addListener(mTagsMenuUpdater);
 
         setWelcomeViewVisibility();
@@ -211,6 +215,10 @@ public class NotesActivity extends AppCompatActivity implements
         mNotesBucket.removeOnNetworkChangeListener(this);
         mNotesBucket.removeOnSaveObjectListener(this);
         mNotesBucket.removeOnDeleteObjectListener(this);
+        NoteBatch.removeListener(mNoteBatchListener);
+
+        mNoteChanges.cancel();
+        mTagChanges.cancel();
     }
 
     @Override
@@ -534,7 +542,7 @@ public class NotesActivity extends AppCompatActivity implements
 
             @Override
             public boolean onQueryTextSubmit(String queryText) {
-                getNoteListFragment().searchNotes(queryText);
+                getNoteListFragment().searchNotes(queryText, false);
                 return true;
             }
 
@@ -1021,6 +1029,8 @@ public class NotesActivity extends AppCompatActivity implements
         mNotesBucket.removeOnNetworkChangeListener(this);
         mNotesBucket.removeOnSaveObjectListener(this);
         mNotesBucket.removeOnDeleteObjectListener(this);
+        NoteBatch.removeListener(mNoteBatchListener);
+        mNoteChanges.cancel();
     }
 
     // Returns the appropriate view to show the undo bar within
@@ -1069,38 +1079,33 @@ public class NotesActivity extends AppCompatActivity implements
 
 
     /* Simperium Bucket Listeners */
-    // received a change from the network, refresh the list
+    // received a change from the network, update the note in the list
     @Override
-    public void onNetworkChange(Bucket<Note> bucket, final Bucket.ChangeType type, String key) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (type == Bucket.ChangeType.INDEX) {
+    public void onNetworkChange(Bucket<Note> bucket, final Bucket.ChangeType type, final String key) {
+        if (type == Bucket.ChangeType.INDEX) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
                     setToolbarProgressVisibility(false);
                 }
-                mNoteListFragment.refreshList();
-            }
-        });
+            });
+            mNoteChanges.postFullRefresh();
+        } else {
+            mNoteChanges.post(key);
+        }
     }
 
     @Override
-    public void onSaveObject(Bucket<Note> bucket, Note object) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                mNoteListFragment.refreshList();
-            }
-        });
+    public void onSaveObject(Bucket<Note> bucket, final Note object) {
+        // notes saved in a batch are refreshed together when it's committed
+        if (NoteBatch.isHeld(object.getSimperiumKey())) return;
+
+        mNoteChanges.post(object.getSimperiumKey());
     }
 
     @Override
-    public void onDeleteObject(Bucket<Note> bucket, Note object) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                mNoteListFragment.refreshList();
-            }
-        });
+    public void onDeleteObject(Bucket<Note> bucket, final Note object) {
+        mNoteChanges.post(object.getSimperiumKey());
     }
 
     @Override
@@ -1108,14 +1113,39 @@ public class NotesActivity extends AppCompatActivity implements
         // noop, NoteEditorFragment will handle this
     }
 
+    // Note changes are batched so a burst from the network refreshes the list once
+    private final ChangeCoalescer mNoteChanges = new ChangeCoalescer(new ChangeCoalescer.OnChangesListener() {
+        @Override
+        public void onChanges(Set<String> keys, boolean fullRefresh) {
+            if (mNoteListFragment == null) return;
+
+            if (fullRefresh) {
+                mNoteListFragment.refreshList();
+            } else {
+                mNoteListFragment.refreshNotes(keys);
+            }
+        }
+    });
+
+    private final NoteBatch.Listener mNoteBatchListener = new NoteBatch.Listener() {
+        @Override
+        public void onBatchCommitted(Bucket<Note> bucket, Set<String> noteKeys) {
+            mNoteChanges.post(noteKeys);
+        }
+    };
+
+    private final ChangeCoalescer mTagChanges = new ChangeCoalescer(new ChangeCoalescer.OnChangesListener() {
+        @Override
+        public void onChanges(Set<String> keys, boolean fullRefresh) {
+            updateNavigationDrawerItems();
+        }
+    });
+
     // Tags bucket listener
     private Bucket.Listener<Tag> mTagsMenuUpdater = new Bucket.Listener<Tag>() {
         void updateNavigationDrawer() {
-            runOnUiThread(new Runnable() {
-                public void run() {
-                    updateNavigationDrawerItems();
-                }
-            });
+            // The drawer always reloads every tag, so individual keys don't matter
+            mTagChanges.postFullRefresh();
         }
 
         @Override
@@ -12,6 +12,7 @@ import android.preference.SwitchPreference;
 import android.widget.Toast;
 
 import com.automattic.simplenote.analytics.AnalyticsTracker;
+import com.automattic.simplenote.utils.MarkdownRenderer;
 import com.automattic.simplenote.utils.PrefUtils;
 import com.automattic.simplenote.utils.ThemeUtils;
 import com.simperium.Simperium;
@@ -57,8 +58,13 @@ public class PreferencesFragment extends PreferenceFragment implements User.Stat
                 } else {
                     Simplenote application = (Simplenote) getActivity().getApplication();
                     application.getSimperium().deauthorizeUser();
+                    // stop the tag index build before the notes it saves are reset
+                    application.resetTagIndex();
                     application.getNotesBucket().reset();
                     application.getTagsBucket().reset();
+                    application.getNoteTagCounts().reset();
+                    application.getNoteTagger().reset();
+                    MarkdownRenderer.clearCache();
                     application.getNotesBucket().stop();
                     application.getTagsBucket().stop();
                     AnalyticsTracker.track(
@@ -112,6 +118,9 @@ public class PreferencesFragment extends PreferenceFragment implements User.Stat
                         "theme_preference"
                 );
 
+                // cached search snippets are highlighted in the colors of the old theme
+                NoteListFragment.clearSearchResults();
+
                 // update intent to indicate the theme setting was changed
                 getActivity().setIntent(ThemeUtils.makeThemeChangeIntent());
 
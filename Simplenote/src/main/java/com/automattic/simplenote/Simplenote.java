@@ -10,9 +10,12 @@ import com.automattic.simplenote.analytics.AnalyticsTracker;
 import com.automattic.simplenote.analytics.AnalyticsTrackerGoogleAnalytics;
 import com.automattic.simplenote.analytics.AnalyticsTrackerNosara;
 import com.automattic.simplenote.models.Note;
+import com.automattic.simplenote.models.NoteBatch;
 import com.automattic.simplenote.models.NoteCountIndexer;
+import com.automattic.simplenote.models.NoteTagCounts;
 import com.automattic.simplenote.models.NoteTagger;
 import com.automattic.simplenote.models.Tag;
+import com.automattic.simplenote.models.TagIndexBuilder;
 import com.automattic.simplenote.utils.PrefUtils;
 import com.simperium.Simperium;
 import com.simperium.client.Bucket;
@@ -20,6 +23,11 @@ import com.simperium.client.BucketNameInvalid;
 
 import org.wordpress.passcodelock.AppLockManager;
 
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class Simplenote extends Application {
 
     // log tag
@@ -33,9 +41,18 @@ public class Simplenote extends Application {
 
     public static final String DELETED_NOTE_ID = "deletedNoteId";
 
+    private static final String NOTE_TAG_COUNTS_FILE = "note_tag_counts.json";
+
     private Simperium mSimperium;
     private Bucket<Note> mNotesBucket;
     private Bucket<Tag> mTagsBucket;
+    private NoteTagCounts mNoteTagCounts;
+    private NoteTagger mNoteTagger;
+
+    // Builds the tag index one account at a time, see buildTagIndex()
+    private final ExecutorService mTagIndexExecutor = Executors.newSingleThreadExecutor();
+    private TagIndexBuilder mTagIndexBuilder;
+    private Future<?> mTagIndexBuild;
 
     public void onCreate() {
         super.onCreate();
@@ -52,12 +69,26 @@ public class Simplenote extends Application {
 
         try {
             mNotesBucket = mSimperium.bucket(new Note.Schema());
+            mNoteTagCounts = new NoteTagCounts(mNotesBucket, new File(getFilesDir(), NOTE_TAG_COUNTS_FILE));
             Tag.Schema tagSchema = new Tag.Schema();
-            tagSchema.addIndex(new NoteCountIndexer(mNotesBucket));
+            tagSchema.addIndex(new NoteCountIndexer(mNotesBucket, mNoteTagCounts));
             mTagsBucket = mSimperium.bucket(tagSchema);
 
             // Every time a note changes or is deleted we need to reindex the tag counts
-            mNotesBucket.addListener(new NoteTagger(mTagsBucket));
+            mNoteTagger = new NoteTagger(mTagsBucket);
+            mNotesBucket.addListener(mNoteTagger);
+            NoteBatch.addListener(mNoteTagger);
+            // Keeps tag counts current note by note instead of counting each tag's notes
+            mNotesBucket.addListener(mNoteTagCounts);
+            mNoteTagCounts.load();
+            // registered here rather than in NotesActivity so edits made while it's paused are seen too
+            NoteListFragment.SearchResultsInvalidator searchResultsInvalidator = new NoteListFragment.SearchResultsInvalidator();
+            mNotesBucket.addListener(searchResultsInvalidator);
+            NoteBatch.addListener(searchResultsInvalidator);
+
+            // notes of a new account have the tag index once they were indexed from the server
+            mNotesBucket.addListener(mTagIndexListener);
+            buildTagIndex();
         } catch (BucketNameInvalid e) {
             throw new RuntimeException("Could not create bucket", e);
         }
@@ -71,6 +102,33 @@ public class Simplenote extends Application {
         AnalyticsTracker.refreshMetadata(mSimperium.getUser().getEmail());
     }
 
+    /**
+     * Notes saved before NoteIndexer added the tag index don't have it until they're saved
+     * again, so tag queries keep matching the tags column until the index was built.
+     */
+    private synchronized void buildTagIndex() {
+        if (TagIndexBuilder.isBuilt(this)) return;
+        if (mTagIndexBuild != null && !mTagIndexBuild.isDone()) return;
+
+        Note.setTagIndexReady(false);
+        mTagIndexBuilder = new TagIndexBuilder(this, mNotesBucket);
+        mTagIndexBuild = mTagIndexExecutor.submit(mTagIndexBuilder);
+    }
+
+    /**
+     * Stops building the tag index of the signed out account and forgets it was built
+     */
+    public synchronized void resetTagIndex() {
+        if (mTagIndexBuilder != null) {
+            mTagIndexBuilder.cancel();
+            mTagIndexBuild.cancel(false);
+            mTagIndexBuilder = null;
+            mTagIndexBuild = null;
+        }
+
+        TagIndexBuilder.reset(this);
+    }
+
     private boolean isFirstLaunch() {
         // NotesActivity sets this pref to false after first launch
         return PrefUtils.getBoolPref(this, PrefUtils.PREF_FIRST_LAUNCH, true);
@@ -88,6 +146,38 @@ public class Simplenote extends Application {
         return mTagsBucket;
     }
 
+    public NoteTagCounts getNoteTagCounts() {
+        return mNoteTagCounts;
+    }
+
+    public NoteTagger getNoteTagger() {
+        return mNoteTagger;
+    }
+
+    private final Bucket.Listener<Note> mTagIndexListener = new Bucket.Listener<Note>() {
+        @Override
+        public void onSaveObject(Bucket<Note> bucket, Note note) {
+            // noop
+        }
+
+        @Override
+        public void onDeleteObject(Bucket<Note> bucket, Note note) {
+            // noop
+        }
+
+        @Override
+        public void onNetworkChange(Bucket<Note> bucket, Bucket.ChangeType type, String key) {
+            if (type == Bucket.ChangeType.INDEX) {
+                buildTagIndex();
+            }
+        }
+
+        @Override
+        public void onBeforeUpdateObject(Bucket<Note> bucket, Note note) {
+            // noop
+        }
+    };
+
     private class ApplicationLifecycleMonitor implements Application.ActivityLifecycleCallbacks,
             ComponentCallbacks2 {
         private boolean mIsInBackground = true;
@@ -2,11 +2,11 @@ package com.automattic.simplenote;
 
 import android.app.AlertDialog;
 import android.app.ListFragment;
-import android.content.Context;
+import android.app.ProgressDialog;
 import android.content.DialogInterface;
-import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.text.Html;
 import android.view.ActionMode;
@@ -18,7 +18,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.AdapterView;
-import android.widget.CursorAdapter;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
@@ -27,11 +27,15 @@ import android.widget.TextView;
 
 import com.automattic.simplenote.analytics.AnalyticsTracker;
 import com.automattic.simplenote.models.Note;
+import com.automattic.simplenote.models.NoteBatch;
+import com.automattic.simplenote.models.NoteTagCounts;
 import com.automattic.simplenote.models.Tag;
 import com.simperium.client.Bucket;
+import com.simperium.client.BucketObjectMissingException;
 import com.simperium.client.BucketObjectNameInvalid;
 import com.simperium.client.Query;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class TagsListFragment extends ListFragment implements AdapterView.OnItemClickListener, ActionMode.Callback, AbsListView.MultiChoiceModeListener, AdapterView.OnItemLongClickListener, Bucket.Listener<Tag>{
@@ -39,7 +43,11 @@ public class TagsListFragment extends ListFragment implements AdapterView.OnItem
     private ActionMode mActionMode;
     private Bucket<Tag> mTagsBucket;
     private Bucket<Note> mNotesBucket;
+    private NoteTagCounts mNoteTagCounts;
     private TagsAdapter mTagsAdapter;
+    private refreshTagsTask mRefreshTagsTask;
+    // Updates the notes of a tag while showing its progress, see tagNotesTask
+    private tagNotesTask mTagNotesTask;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -71,8 +79,9 @@ public class TagsListFragment extends ListFragment implements AdapterView.OnItem
         Simplenote application = (Simplenote) getActivity().getApplication();
         mTagsBucket = application.getTagsBucket();
         mNotesBucket = application.getNotesBucket();
+        mNoteTagCounts = application.getNoteTagCounts();
 
-        mTagsAdapter = new TagsAdapter(getActivity().getBaseContext(), null, 0);
+        mTagsAdapter = new TagsAdapter();
         setListAdapter(mTagsAdapter);
         refreshTags();
     }
@@ -98,10 +107,25 @@ public class TagsListFragment extends ListFragment implements AdapterView.OnItem
         mTagsBucket.removeOnDeleteObjectListener(this);
     }
 
+    @Override
+    public void onDestroyView() {
+        // the task keeps updating the notes, only its dialog goes away with the activity
+        if (mTagNotesTask != null) {
+            mTagNotesTask.dismissProgress();
+        }
+
+        super.onDestroyView();
+    }
+
     protected void refreshTags() {
-        Query<Tag> tagQuery = Tag.all(mTagsBucket).reorder().orderByKey().include(Tag.NOTE_COUNT_INDEX_NAME);
-        Bucket.ObjectCursor<Tag> cursor = tagQuery.execute();
-        mTagsAdapter.changeCursor(cursor);
+        // bucket listeners post refreshes that can run after the fragment was detached
+        if (!isAdded()) return;
+
+        if (mRefreshTagsTask != null && mRefreshTagsTask.getStatus() != AsyncTask.Status.FINISHED)
+            mRefreshTagsTask.cancel(true);
+
+        mRefreshTagsTask = new refreshTagsTask(mNoteTagCounts);
+        mRefreshTagsTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Override
@@ -111,7 +135,8 @@ public class TagsListFragment extends ListFragment implements AdapterView.OnItem
         final AlertDialog.Builder alert = new AlertDialog.Builder(getActivity());
         LinearLayout alertView = (LinearLayout) getActivity().getLayoutInflater().inflate(R.layout.edit_tag, null);
 
-        final Tag tag = mTagsAdapter.getItem(row);
+        final Tag tag = getTag(mTagsAdapter.getItem(row));
+        if (tag == null) return;
 
         final EditText tagNameEditText = (EditText) alertView.findViewById(R.id.tag_name_edit);
         tagNameEditText.setText(tag.getName());
@@ -121,17 +146,12 @@ public class TagsListFragment extends ListFragment implements AdapterView.OnItem
         alert.setPositiveButton(R.string.save, new DialogInterface.OnClickListener() {
             public void onClick(DialogInterface dialog, int whichButton) {
                 String value = tagNameEditText.getText().toString().trim();
-                try {
-                    tag.renameTo(value, mNotesBucket);
-                    AnalyticsTracker.track(
-                            AnalyticsTracker.Stat.TAG_EDITOR_ACCESSED,
-                            AnalyticsTracker.CATEGORY_TAG,
-                            "tag_alert_edit_box"
-                    );
-                } catch (BucketObjectNameInvalid e) {
-                    android.util.Log.e(Simplenote.TAG, "Unable to rename tag", e);
-                    // TODO: show user a message that new tag name is not ok
-                }
+                new renameTagTask(tag, value).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                AnalyticsTracker.track(
+                        AnalyticsTracker.Stat.TAG_EDITOR_ACCESSED,
+                        AnalyticsTracker.CATEGORY_TAG,
+                        "tag_alert_edit_box"
+                );
             }
         });
         alert.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
@@ -255,114 +275,314 @@ public class TagsListFragment extends ListFragment implements AdapterView.OnItem
         // noop
     }
 
-    private class TagsAdapter extends CursorAdapter {
+    private Tag getTag(TagRow row) {
+        if (row == null) return null;
+
+        try {
+            return mTagsBucket.getObject(row.key);
+        } catch (BucketObjectMissingException e) {
+            return null;
+        }
+    }
+
+    private void deleteTag(TagRow row) {
+        Tag tag = getTag(row);
+        if (tag == null) return;
+
+        // the tag is deleted once it has been removed from all of its notes
+        new removeTagFromNotesTask(tag).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        AnalyticsTracker.track(
+                AnalyticsTracker.Stat.TAG_MENU_DELETED,
+                AnalyticsTracker.CATEGORY_TAG,
+                "list_trash_button"
+        );
+    }
+
+    private void confirmDeleteTag(final TagRow row) {
+        if (!isAdded()) return;
+
+        if (row.noteCount == 0) {
+            deleteTag(row);
+            return;
+        }
+
+        AlertDialog.Builder alert = new AlertDialog.Builder(getActivity());
+        alert.setTitle(R.string.delete_tag);
+        alert.setMessage(getString(R.string.confirm_delete_tag));
+        alert.setPositiveButton(R.string.yes, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int whichButton) {
+                deleteTag(row);
+            }
+        });
+        alert.setNegativeButton(R.string.no, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int whichButton) {
+                // Do nothing, just closing the dialog
+            }
+        });
+        alert.show();
+    }
+
+    /**
+     * A tag as shown in the list, read along with its note count when the tags are loaded so
+     * binding a row never touches the database
+     */
+    static class TagRow {
+        final String key;
+        final String name;
+        final int noteCount;
+
+        TagRow(String key, String name, int noteCount) {
+            this.key = key;
+            this.name = name;
+            this.noteCount = noteCount;
+        }
+    }
 
-        private Bucket.ObjectCursor<Tag> mCursor;
+    private static class TagViewHolder {
+        TextView nameTextView;
+        TextView countTextView;
+        TagRow row;
+    }
+
+    class TagsAdapter extends BaseAdapter {
+
+        private List<TagRow> mRows = new ArrayList<>();
 
-        public TagsAdapter(Context context, Bucket.ObjectCursor<Tag> c, int flags) {
-            super(context, c, flags);
-            mCursor = c;
+        public void setRows(List<TagRow> rows) {
+            mRows = rows;
+            notifyDataSetChanged();
         }
 
-        public void changeCursor(Bucket.ObjectCursor<Tag> cursor) {
-            super.changeCursor(cursor);
-            mCursor = cursor;
+        @Override
+        public int getCount() {
+            return mRows.size();
         }
 
         @Override
-        public Tag getItem(int row) {
-            super.getItem(row);
-            return mCursor.getObject();
+        public TagRow getItem(int position) {
+            return mRows.get(position);
         }
 
         @Override
-        public View getView(final int position, View convertView, ViewGroup parent) {
-            mCursor.moveToPosition(position);
+        public long getItemId(int position) {
+            return position;
+        }
 
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            final TagViewHolder holder;
             if (convertView == null) {
-                convertView = getActivity().getLayoutInflater().inflate(R.layout.tags_list_row, null);
+                convertView = LayoutInflater.from(parent.getContext()).inflate(R.layout.tags_list_row, parent, false);
+                holder = new TagViewHolder();
+                holder.nameTextView = (TextView) convertView.findViewById(R.id.tag_name);
+                holder.countTextView = (TextView) convertView.findViewById(R.id.tag_count);
+
+                ImageButton deleteButton = (ImageButton) convertView.findViewById(R.id.tag_trash);
+                deleteButton.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        if (holder.row != null) {
+                            confirmDeleteTag(holder.row);
+                        }
+                    }
+                });
+
+                convertView.setTag(holder);
+            } else {
+                holder = (TagViewHolder) convertView.getTag();
             }
-            final Tag tag = mCursor.getObject();
-            convertView.setTag(tag.getSimperiumKey());
-
-            TextView tagTitle = (TextView) convertView.findViewById(R.id.tag_name);
-            TextView tagCountTextView = (TextView) convertView.findViewById(R.id.tag_count);
-            tagTitle.setText(tag.getName());
-            final int tagCount = mNotesBucket.query().where("tags", Query.ComparisonType.EQUAL_TO, tag.getSimperiumKey()).count();
-            if (tagCount > 0) {
-                tagCountTextView.setText(String.valueOf(tagCount));
+
+            TagRow row = mRows.get(position);
+            holder.row = row;
+            holder.nameTextView.setText(row.name);
+            if (row.noteCount > 0) {
+                holder.countTextView.setText(String.valueOf(row.noteCount));
             } else {
-                tagCountTextView.setText("");
+                holder.countTextView.setText("");
             }
 
-            ImageButton deleteButton = (ImageButton) convertView.findViewById(R.id.tag_trash);
-            deleteButton.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View view) {
-                    if (!isAdded()) return;
-
-                    if (tagCount == 0) {
-                        deleteTag(tag);
-                    } else if (tagCount > 0) {
-                        AlertDialog.Builder alert = new AlertDialog.Builder(getActivity());
-                        alert.setTitle(R.string.delete_tag);
-                        alert.setMessage(getString(R.string.confirm_delete_tag));
-                        alert.setPositiveButton(R.string.yes, new DialogInterface.OnClickListener() {
-                            public void onClick(DialogInterface dialog, int whichButton) {
-                                deleteTag(tag);
-                            }
-                        });
-                        alert.setNegativeButton(R.string.no, new DialogInterface.OnClickListener() {
-                            public void onClick(DialogInterface dialog, int whichButton) {
-                                // Do nothing, just closing the dialog
-                            }
-                        });
-                        alert.show();
+            return convertView;
+        }
+    }
+
+    /**
+     * Reads the tags and their note counts off the UI thread
+     */
+    private class refreshTagsTask extends AsyncTask<Void, Void, List<TagRow>> {
+        private final NoteTagCounts mNoteTagCounts;
+
+        refreshTagsTask(NoteTagCounts noteTagCounts) {
+            mNoteTagCounts = noteTagCounts;
+        }
+
+        @Override
+        protected List<TagRow> doInBackground(Void... args) {
+            Query<Tag> tagQuery = Tag.all(mTagsBucket).reorder().orderByKey()
+                    .include(Tag.NAME_PROPERTY, Tag.NOTE_COUNT_INDEX_NAME);
+            Bucket.ObjectCursor<Tag> cursor = tagQuery.execute();
+
+            List<TagRow> rows = new ArrayList<>(cursor.getCount());
+            try {
+                int nameIndex = cursor.getColumnIndex(Tag.NAME_PROPERTY);
+                int countIndex = cursor.getColumnIndex(Tag.NOTE_COUNT_INDEX_NAME);
+
+                while (cursor.moveToNext()) {
+                    if (isCancelled()) break;
+
+                    String key = cursor.getSimperiumKey();
+                    String name = cursor.getString(nameIndex);
+                    if (name == null) name = key;
+
+                    // The maintained counts are current, the indexed count is only as fresh as the last reindex
+                    int noteCount = mNoteTagCounts != null ? mNoteTagCounts.getCount(name) : -1;
+                    if (noteCount == -1) {
+                        noteCount = cursor.getInt(countIndex);
                     }
+
+                    rows.add(new TagRow(key, name, noteCount));
                 }
-            });
+            } finally {
+                cursor.close();
+            }
 
-            return convertView;
+            return rows;
+        }
+
+        @Override
+        protected void onPostExecute(List<TagRow> rows) {
+            if (!isAdded()) return;
+
+            mTagsAdapter.setRows(rows);
+        }
+    }
+
+    /**
+     * Updates the notes of a tag off the UI thread, showing how many of them have been
+     * updated so far
+     */
+    private abstract class tagNotesTask extends AsyncTask<Void, Integer, Boolean> implements Tag.OnNotesProgressListener {
+        protected final Tag mTag;
+        private final int mTitleId;
+        private final boolean mCancelable;
+        private ProgressDialog mProgressDialog;
+        private long mStartTime;
+        private int mStartDispatchCount;
+        // Last percentage of the notes shown in the dialog, only used on the task's thread
+        private int mPublishedPercent = -1;
+
+        tagNotesTask(Tag tag, int titleId, boolean cancelable) {
+            mTag = tag;
+            mTitleId = titleId;
+            mCancelable = cancelable;
         }
 
-        private void deleteTag(Tag tag) {
-            tag.delete();
-            new removeTagFromNotesTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, tag);
-            AnalyticsTracker.track(
-                    AnalyticsTracker.Stat.TAG_MENU_DELETED,
-                    AnalyticsTracker.CATEGORY_TAG,
-                    "list_trash_button"
-            );
+        @Override
+        protected void onPreExecute() {
+            mTagNotesTask = this;
+            mStartTime = SystemClock.uptimeMillis();
+            mStartDispatchCount = NoteBatch.getDispatchCount();
+
+            mProgressDialog = new ProgressDialog(getActivity());
+            mProgressDialog.setTitle(mTitleId);
+            mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            mProgressDialog.setCancelable(false);
+            if (mCancelable) {
+                mProgressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(R.string.cancel), new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int whichButton) {
+                        cancel(false);
+                    }
+                });
+            }
+            mProgressDialog.show();
         }
 
+        // Called for every updated note, the dialog is only updated when the percentage changes
         @Override
-        public View newView(Context context, Cursor cursor, ViewGroup viewGroup) {
-            return null;
+        public void onNotesProgress(int updatedNotes, int totalNotes) {
+            int percent = totalNotes > 0 ? updatedNotes * 100 / totalNotes : 100;
+            if (percent == mPublishedPercent) return;
+
+            mPublishedPercent = percent;
+            publishProgress(updatedNotes, totalNotes);
         }
 
         @Override
-        public void bindView(View view, Context context, Cursor cursor) {
+        protected void onProgressUpdate(Integer... progress) {
+            if (mProgressDialog == null) return;
 
+            mProgressDialog.setMax(progress[1]);
+            mProgressDialog.setProgress(progress[0]);
+        }
+
+        @Override
+        protected void onPostExecute(Boolean updated) {
+            finish();
+        }
+
+        @Override
+        protected void onCancelled(Boolean updated) {
+            finish();
+        }
+
+        private void finish() {
+            if (BuildConfig.DEBUG) {
+                android.util.Log.d(Simplenote.TAG, String.format("Updated notes of tag %s in %dms with %d batch notifications",
+                        mTag.getSimperiumKey(), SystemClock.uptimeMillis() - mStartTime,
+                        NoteBatch.getDispatchCount() - mStartDispatchCount));
+            }
+
+            if (mTagNotesTask == this) {
+                mTagNotesTask = null;
+            }
+
+            // the activity may have gone away while the notes were updated
+            if (isAdded() && !getActivity().isFinishing()) {
+                dismissProgress();
+            }
+        }
+
+        void dismissProgress() {
+            if (mProgressDialog != null && mProgressDialog.isShowing()) {
+                mProgressDialog.dismiss();
+            }
+            mProgressDialog = null;
         }
     }
 
-    private class removeTagFromNotesTask extends AsyncTask<Tag, Void, Void> {
+    private class renameTagTask extends tagNotesTask {
+        private final String mName;
+
+        renameTagTask(Tag tag, String name) {
+            super(tag, R.string.rename_tag, false);
+            mName = name;
+        }
 
         @Override
-        protected Void doInBackground(Tag... removedTags) {
-            Tag tag = removedTags[0];
-            if (tag != null) {
-                Bucket.ObjectCursor<Note> notesCursor = tag.findNotes(mNotesBucket);
-                while (notesCursor.moveToNext()) {
-                    Note note = notesCursor.getObject();
-                    List<String> tags = note.getTags();
-                    tags.remove(tag.getName());
-                    note.setTags(tags);
-                    note.save();
-                }
-                notesCursor.close();
+        protected Boolean doInBackground(Void... args) {
+            try {
+                mTag.renameTo(mName, mNotesBucket, this);
+                return true;
+            } catch (BucketObjectNameInvalid e) {
+                android.util.Log.e(Simplenote.TAG, "Unable to rename tag", e);
+                // TODO: show user a message that new tag name is not ok
+                return false;
             }
-            return null;
+        }
+    }
+
+    /**
+     * Removes a tag from its notes in batches and deletes it once none of them have it, can
+     * be cancelled between batches
+     */
+    private class removeTagFromNotesTask extends tagNotesTask {
+
+        removeTagFromNotesTask(Tag tag) {
+            super(tag, R.string.delete_tag, true);
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... args) {
+            return mTag.removeFromNotes(mNotesBucket, this);
         }
     }
 }
@@ -18,8 +18,11 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 public class Note extends BucketObject {
 	
@@ -31,7 +34,19 @@ public class Note extends BucketObject {
 
     private static final String BLANK_CONTENT="";
     private static final String SPACE = " ";
+    private static final char NEW_LINE_CHAR = '\n';
+    private static final char SPACE_CHAR = ' ';
     private static final int MAX_PREVIEW_CHARS = 300;
+    // a new line after this many chars isn't treated as the end of the title
+    private static final int MAX_TITLE_NEW_LINE_POSITION = 200;
+
+    // preview chars are collected here before the preview string is made, one buffer per thread
+    private static final ThreadLocal<char[]> sPreviewBuffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[MAX_PREVIEW_CHARS];
+        }
+    };
     
     public static final String CONTENT_PROPERTY="content";
     public static final String TAGS_PROPERTY="tags";
@@ -46,6 +61,7 @@ public class Note extends BucketObject {
     public static final String PINNED_INDEX_NAME="pinned";
     public static final String MODIFIED_INDEX_NAME="modified";
     public static final String CREATED_INDEX_NAME="created";
+    public static final String TAG_INDEX_NAME="tag";
     public static final String MATCHED_TITLE_INDEX_NAME="matchedTitle";
     public static final String MATCHED_CONTENT_INDEX_NAME="matchedContent";
     public static final String PUBLISH_URL="http://simp.ly/publish/";
@@ -56,6 +72,18 @@ public class Note extends BucketObject {
 	protected String mTitle = null;
 	protected String mContentPreview = null;
 
+    // false until every note has been indexed by NoteIndexer with its tags
+    private static volatile boolean sTagIndexReady = true;
+
+    // Bits of the system tags the app reads, see getSystemTagFlags()
+    private static final int MARKDOWN_FLAG = 1;
+    private static final int PINNED_FLAG = 1 << 1;
+    private static final int PUBLISHED_FLAG = 1 << 2;
+
+    // Parsed views of the tags arrays, replaced whenever the arrays are
+    private volatile ParsedTags mParsedTags;
+    private volatile ParsedSystemTags mParsedSystemTags;
+
 
 	public static class Schema extends BucketSchema<Note> {
 
@@ -86,9 +114,88 @@ public class Note extends BucketObject {
             note.setProperties(properties);
             note.mTitle = null;
             note.mContentPreview = null;
+            note.mParsedTags = null;
+            note.mParsedSystemTags = null;
         }
 	}
 
+    /**
+     * Values of a tags array as they were when it was parsed. The array is returned by
+     * {@link #getSystemTags} and can be changed in place, so it's compared value by value
+     * rather than trusting that the same array with the same length still holds the same tags.
+     */
+    private static class ParsedArray {
+        final JSONArray source;
+        final Object[] values;
+
+        ParsedArray(JSONArray source) {
+            this.source = source;
+            this.values = new Object[source.length()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = source.opt(i);
+            }
+        }
+
+        boolean isParsedFrom(JSONArray array) {
+            if (array != source || array.length() != values.length) return false;
+
+            for (int i = 0; i < values.length; i++) {
+                Object value = array.opt(i);
+                if (value != values[i] && (value == null || !value.equals(values[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The tags of a note as read from its tags array. Kept until the array is replaced or
+     * changes so reading the tags again doesn't allocate.
+     */
+    private static class ParsedTags extends ParsedArray {
+        final List<String> tags;
+        final Set<String> lowercaseTags;
+        final String tagString;
+
+        ParsedTags(JSONArray source) {
+            super(source);
+
+            List<String> tags = new ArrayList<>(values.length);
+            Set<String> lowercaseTags = new HashSet<>(values.length);
+            StringBuilder tagString = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                String tag = source.optString(i);
+                if (tag.equals("")) continue;
+
+                tags.add(tag);
+                lowercaseTags.add(tag.toLowerCase());
+                if (tagString.length() > 0) {
+                    tagString.append(SPACE);
+                }
+                tagString.append(tag);
+            }
+
+            this.tags = Collections.unmodifiableList(tags);
+            this.lowercaseTags = Collections.unmodifiableSet(lowercaseTags);
+            this.tagString = tagString.toString();
+        }
+    }
+
+    private static class ParsedSystemTags extends ParsedArray {
+        final int flags;
+
+        ParsedSystemTags(JSONArray source) {
+            super(source);
+
+            int flags = 0;
+            for (int i = 0; i < values.length; i++) {
+                flags |= systemTagFlag(source.optString(i));
+            }
+            this.flags = flags;
+        }
+    }
+
     public static Query<Note> all(Bucket<Note> noteBucket){
         return noteBucket.query()
                 .where(DELETED_PROPERTY, ComparisonType.NOT_EQUAL_TO, true);
@@ -106,9 +213,23 @@ public class Note extends BucketObject {
     }
 
     public static Query<Note> allInTag(Bucket<Note> noteBucket, String tag){
-        return noteBucket.query()
-                .where(DELETED_PROPERTY, ComparisonType.NOT_EQUAL_TO, true)
-                .where(TAGS_PROPERTY, ComparisonType.LIKE, tag);
+        return withTag(noteBucket.query(), tag)
+                .where(DELETED_PROPERTY, ComparisonType.NOT_EQUAL_TO, true);
+    }
+
+    /**
+     * Limits the query to notes tagged with the tag, ignoring case
+     */
+    public static Query<Note> withTag(Query<Note> query, String tag){
+        if (!sTagIndexReady) {
+            // notes saved before the tag index existed are still being indexed
+            return query.where(TAGS_PROPERTY, ComparisonType.LIKE, tag);
+        }
+        return query.where(TAG_INDEX_NAME, ComparisonType.EQUAL_TO, tag.toLowerCase());
+    }
+
+    public static void setTagIndexReady(boolean ready){
+        sTagIndexReady = ready;
     }
 
 
@@ -120,29 +241,73 @@ public class Note extends BucketObject {
         super(key, properties);
     }
 
+    /**
+     * Builds the title and preview out of the first MAX_PREVIEW_CHARS chars of the trimmed
+     * content. Only the start and end of the content are read, so the time it takes doesn't
+     * depend on the length of the note.
+     */
     protected void updateTitleAndPreview() {
-        // try to build a title and preview property out of content
-        String content = getContent().trim();
-        if (content.length() > MAX_PREVIEW_CHARS) {
-            content = content.substring(0, MAX_PREVIEW_CHARS - 1);
-        }
+        String content = getContent();
+        int length = content.length();
 
-        int firstNewLinePosition = content.indexOf(NEW_LINE);
-        if (firstNewLinePosition > -1 && firstNewLinePosition < 200) {
-            mTitle = content.substring(0, firstNewLinePosition).trim();
+        // bounds of the content as trim() would return it, without copying it
+        int start = 0;
+        while (start < length && content.charAt(start) <= ' ') {
+            start++;
+        }
+        int end = length;
+        while (end > start && content.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start > MAX_PREVIEW_CHARS) {
+            end = start + MAX_PREVIEW_CHARS - 1;
+        }
 
-            if (firstNewLinePosition < content.length()) {
-                mContentPreview = content.substring(firstNewLinePosition, content.length());
-                mContentPreview = mContentPreview.replace(NEW_LINE, SPACE).replace(SPACE+SPACE, SPACE).trim();
+        int firstNewLinePosition = -1;
+        for (int i = start; i < end && i - start < MAX_TITLE_NEW_LINE_POSITION; i++) {
+            if (content.charAt(i) == NEW_LINE_CHAR) {
+                firstNewLinePosition = i;
+                break;
             }
-            else {
-                mContentPreview = content;
+        }
+
+        if (firstNewLinePosition > -1) {
+            mTitle = content.substring(start, firstNewLinePosition).trim();
+            mContentPreview = collapseNewLines(content, firstNewLinePosition, end);
+        } else {
+            mTitle = content.substring(start, end);
+            mContentPreview = mTitle;
+        }
+    }
+
+    /**
+     * Replaces new lines with spaces and halves runs of spaces, as if every pair of spaces was
+     * replaced with a single one, and trims the result
+     */
+    private static String collapseNewLines(String content, int start, int end) {
+        char[] buffer = sPreviewBuffer.get();
+        int length = 0;
+        int spaces = 0;
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (c == NEW_LINE_CHAR || c == SPACE_CHAR) {
+                if (spaces++ % 2 == 0) {
+                    buffer[length++] = SPACE_CHAR;
+                }
+            } else {
+                spaces = 0;
+                buffer[length++] = c;
             }
         }
-        else {
-            mTitle = content;
-            mContentPreview = content;
+
+        int from = 0;
+        while (from < length && buffer[from] <= ' ') {
+            from++;
+        }
+        while (length > from && buffer[length - 1] <= ' ') {
+            length--;
         }
+        return new String(buffer, from, length - from);
     }
 	
 	public String getTitle() {
@@ -199,43 +364,30 @@ public class Note extends BucketObject {
     }
 
     public boolean hasTag(String tag){
-        List<String> tags = getTags();
-        String tagLower = tag.toLowerCase();
-        for (String tagName : tags) {
-            if (tagLower.equals(tagName.toLowerCase())) return true;
-        }
-        return false;
+        return getParsedTags().lowercaseTags.contains(tag.toLowerCase());
     }
 
     public boolean hasTag(Tag tag){
         return hasTag(tag.getSimperiumKey());
     }
 
+    /**
+     * The note's tags, without empty ones. The list can't be modified, use {@link #setTags} to
+     * change the tags.
+     */
     public List<String> getTags() {
+        return getParsedTags().tags;
+    }
 
-        JSONArray tags = (JSONArray) getProperty(TAGS_PROPERTY);
-
-        if (tags == null) {
-            tags = new JSONArray();
-            setProperty(TAGS_PROPERTY, tags);
-        }
-
-        int length = tags.length();
-
-        List<String> tagList = new ArrayList<>(length);
-
-        if (length == 0) return tagList;
-
-        for (int i=0; i<length; i++) {
-            String tag = tags.optString(i);
-            if (!tag.equals(""))
-                tagList.add(tag);
-        }
-
-        return tagList;
+    /**
+     * The note's tags in lowercase
+     */
+    public Set<String> getLowercaseTags() {
+        return getParsedTags().lowercaseTags;
     }
 
     public void setTags(List<String> tags) {
+        mParsedTags = null;
         setProperty(TAGS_PROPERTY, new JSONArray(tags));
     }
 
@@ -243,63 +395,77 @@ public class Note extends BucketObject {
      * String of tags delimited by a space
      */
     public CharSequence getTagString(){
-        StringBuilder tagString = new StringBuilder();
-        List<String> tags = getTags();
-        for(String tag : tags){
-            if (tagString.length() > 0) {
-                tagString.append(SPACE);
-            }
-            tagString.append(tag);
+        return getParsedTags().tagString;
+    }
+
+    private ParsedTags getParsedTags() {
+        JSONArray tags = (JSONArray) getProperty(TAGS_PROPERTY);
+
+        if (tags == null) {
+            tags = new JSONArray();
+            mParsedTags = null;
+            setProperty(TAGS_PROPERTY, tags);
+        }
+
+        ParsedTags parsedTags = mParsedTags;
+        if (parsedTags == null || !parsedTags.isParsedFrom(tags)) {
+            parsedTags = new ParsedTags(tags);
+            mParsedTags = parsedTags;
         }
-        return tagString;
+        return parsedTags;
     }
 
     /**
      * Sets the note's tags by providing it with a {@link String} of space
-     * seperated tags. Filters out duplicate tags.
+     * seperated tags. Filters out duplicate tags, ignoring case. The tags
+     * are left alone if they wouldn't change.
      * 
      * @param tagString a space delimited list of tags
      */
     public void setTagString(String tagString){
-        List<String> tags = getTags();
-        tags.clear();
+        ParsedTags parsedTags = getParsedTags();
 
         if (tagString == null) {
-            setTags(tags);
+            if (!parsedTags.tags.isEmpty()) {
+                setTags(new ArrayList<String>());
+            }
             return;
         }
 
-        // Make sure string has a trailing space
-        if (tagString.length() > 1 && !tagString.substring(tagString.length() - 1).equals(SPACE))
-            tagString = tagString + SPACE;
-        // for comparing case-insensitive strings, would like to find a way to
-        // do this without allocating a new list and strings
-        List<String> tagsUpperCase = new ArrayList<>();
-        // remove all current tags
+        // the editor saves the tag string it was given, which is usually the current one
+        if (tagString.equals(parsedTags.tagString) && parsedTags.lowercaseTags.size() == parsedTags.tags.size()) {
+            return;
+        }
+
+        List<String> tags = new ArrayList<>();
+        Set<String> lowercaseTags = new HashSet<>();
+        int length = tagString.length();
         int start = 0;
-        int next = -1;
-        String possible;
-        String possibleUpperCase;
         // search tag string for space characters and pull out individual tags
-        do {
-            next = tagString.indexOf(SPACE, start);
+        while (start < length) {
+            int next = tagString.indexOf(SPACE_CHAR, start);
+            if (next == -1) {
+                next = length;
+            }
             if (next > start) {
-                possible = tagString.substring(start, next);
-                possibleUpperCase = possible.toUpperCase();
-                if (!possible.equals(SPACE) && !tagsUpperCase.contains(possibleUpperCase)) {
-                    tagsUpperCase.add(possibleUpperCase);
-                    tags.add(possible);
+                String tag = tagString.substring(start, next);
+                if (lowercaseTags.add(tag.toLowerCase())) {
+                    tags.add(tag);
                 }
             }
             start = next + 1;
-        } while(next > -1);
-        setTags(tags);
+        }
+
+        if (!tags.equals(parsedTags.tags)) {
+            setTags(tags);
+        }
     }
 
     public JSONArray getSystemTags() {
         JSONArray tags = (JSONArray) getProperty(SYSTEM_TAGS_PROPERTY);
         if (tags == null) {
             tags = new JSONArray();
+            mParsedSystemTags = null;
             setProperty(SYSTEM_TAGS_PROPERTY, tags);
         }
         return tags;
@@ -356,10 +522,39 @@ public class Note extends BucketObject {
         }
     }
 
+    private static int systemTagFlag(String tag) {
+        switch (tag) {
+            case MARKDOWN_TAG:
+                return MARKDOWN_FLAG;
+            case PINNED_TAG:
+                return PINNED_FLAG;
+            case PUBLISHED_TAG:
+                return PUBLISHED_FLAG;
+            default:
+                return 0;
+        }
+    }
+
+    private int getSystemTagFlags() {
+        JSONArray tags = getSystemTags();
+
+        ParsedSystemTags parsedSystemTags = mParsedSystemTags;
+        if (parsedSystemTags == null || !parsedSystemTags.isParsedFrom(tags)) {
+            parsedSystemTags = new ParsedSystemTags(tags);
+            mParsedSystemTags = parsedSystemTags;
+        }
+        return parsedSystemTags.flags;
+    }
+
     private boolean hasSystemTag(String tag) {
         if (TextUtils.isEmpty(tag))
             return false;
 
+        int flag = systemTagFlag(tag);
+        if (flag != 0) {
+            return (getSystemTagFlags() & flag) != 0;
+        }
+
         JSONArray tags = getSystemTags();
         int length = tags.length();
         for (int i=0; i<length; i++) {
@@ -378,6 +573,7 @@ public class Note extends BucketObject {
 
         // Ensure we don't add the same tag again
         if (!hasSystemTag(tag)) {
+            mParsedSystemTags = null;
             getSystemTags().put(tag);
         }
     }
@@ -400,6 +596,7 @@ public class Note extends BucketObject {
             // could not update pinned setting
         }
 
+        mParsedSystemTags = null;
         setProperty(SYSTEM_TAGS_PROPERTY, newTags);
     }
 
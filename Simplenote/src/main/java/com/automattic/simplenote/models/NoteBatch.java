@@ -0,0 +1,112 @@
+package com.automattic.simplenote.models;
+
+import com.simperium.client.Bucket;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves a group of notes as one change, e.g. every note of a tag that is being renamed.
+ *
+ * Simperium saves and syncs each note on its own, but listeners that would otherwise do work
+ * for every saved note can check {@link #isHeld} in their bucket callbacks and skip the notes
+ * of an open batch. Once the batch is committed they're called a single time with every key
+ * through {@link Listener#onBatchCommitted}.
+ */
+public class NoteBatch {
+
+    public interface Listener {
+        /**
+         * Called on the thread that committed the batch
+         *
+         * @param noteKeys  the keys of the notes saved in the batch, in the order they were saved
+         */
+        void onBatchCommitted(Bucket<Note> bucket, Set<String> noteKeys);
+    }
+
+    // Keys of the notes saved by batches that haven't been committed yet
+    private static final Set<String> sHeldKeys = new HashSet<>();
+    private static final List<Listener> sListeners = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger sDispatchCount = new AtomicInteger();
+
+    private final Bucket<Note> mBucket;
+    private final Set<String> mKeys = new LinkedHashSet<>();
+    private boolean mCommitted;
+
+    public NoteBatch(Bucket<Note> bucket) {
+        mBucket = bucket;
+    }
+
+    public static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    // Number of times a listener was called for a committed batch
+    public static int getDispatchCount() {
+        return sDispatchCount.get();
+    }
+
+    /**
+     * Whether the note was saved by a batch that hasn't been committed yet
+     */
+    public static boolean isHeld(String noteKey) {
+        synchronized (sHeldKeys) {
+            return sHeldKeys.contains(noteKey);
+        }
+    }
+
+    public void save(Note note) {
+        if (mCommitted) {
+            throw new IllegalStateException("Batch was already committed");
+        }
+
+        String key = note.getSimperiumKey();
+        mKeys.add(key);
+        synchronized (sHeldKeys) {
+            sHeldKeys.add(key);
+        }
+
+        note.save();
+    }
+
+    public int size() {
+        return mKeys.size();
+    }
+
+    /**
+     * Releases the notes of the batch without telling the listeners, for notes that were only
+     * saved again to rebuild their indexes
+     */
+    public void release() {
+        mCommitted = true;
+
+        synchronized (sHeldKeys) {
+            sHeldKeys.removeAll(mKeys);
+        }
+    }
+
+    /**
+     * Releases the notes of the batch and tells the listeners about them, if any were saved
+     */
+    public void commit() {
+        if (mCommitted) return;
+        release();
+
+        if (mKeys.isEmpty()) return;
+
+        Set<String> keys = Collections.unmodifiableSet(mKeys);
+        for (Listener listener : sListeners) {
+            listener.onBatchCommitted(mBucket, keys);
+            sDispatchCount.incrementAndGet();
+        }
+    }
+}
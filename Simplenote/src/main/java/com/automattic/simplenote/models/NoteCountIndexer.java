@@ -13,15 +13,25 @@ import java.util.List;
 public class NoteCountIndexer implements Indexer<Tag> {
 
     private Bucket<Note> mNotesBucket;
+    private NoteTagCounts mNoteTagCounts;
 
     public NoteCountIndexer(Bucket<Note> notesBucket) {
+        this(notesBucket, null);
+    }
+
+    public NoteCountIndexer(Bucket<Note> notesBucket, NoteTagCounts noteTagCounts) {
         mNotesBucket = notesBucket;
+        mNoteTagCounts = noteTagCounts;
     }
 
     @Override
     public List<Index> index(Tag tag){
         List<Index> indexes = new ArrayList<>(1);
-        int count = Note.allInTag(mNotesBucket, tag.getSimperiumKey()).count();
+        // only query the notes while the maintained counts are still loading
+        int count = mNoteTagCounts != null ? mNoteTagCounts.getCount(tag.getName()) : -1;
+        if (count == -1) {
+            count = Note.allInTag(mNotesBucket, tag.getSimperiumKey()).count();
+        }
         indexes.add(new Index(Tag.NOTE_COUNT_INDEX_NAME, count));
         return indexes;
     }
@@ -4,7 +4,9 @@ import com.simperium.client.BucketSchema.Index;
 import com.simperium.client.BucketSchema.Indexer;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class NoteIndexer implements Indexer<Note> {
 
@@ -17,6 +19,15 @@ public class NoteIndexer implements Indexer<Note> {
         indexes.add(new Index(Note.TITLE_INDEX_NAME, note.getTitle()));
         indexes.add(new Index(Note.MODIFIED_INDEX_NAME, note.getModificationDate().getTimeInMillis()));
         indexes.add(new Index(Note.CREATED_INDEX_NAME, note.getCreationDate().getTimeInMillis()));
+
+        // one lowercase row per tag so tag lookups are exact, case insensitive and indexed
+        Set<String> tags = new HashSet<>();
+        for (String tag : note.getTags()) {
+            String tagIndex = tag.toLowerCase();
+            if (tags.add(tagIndex)) {
+                indexes.add(new Index(Note.TAG_INDEX_NAME, tagIndex));
+            }
+        }
         return indexes;
 
     }
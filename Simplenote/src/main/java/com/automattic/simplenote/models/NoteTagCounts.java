@@ -0,0 +1,367 @@
+package com.automattic.simplenote.models;
+
+import android.util.Log;
+
+import com.simperium.client.Bucket;
+import com.simperium.client.BucketObjectMissingException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the number of notes in each tag up to date as notes are saved, deleted or changed over
+ * the network, so a tag's count doesn't need a query over every note.
+ *
+ * The tags of every counted note are remembered so each change only touches the tags that were
+ * added or removed. They're saved to a file next to the buckets and the counts are rebuilt from
+ * the notes bucket when that file is missing or the bucket is reindexed.
+ *
+ * Counts follow {@link Note#allInTag}: deleted notes aren't counted and tag names are compared
+ * case insensitively.
+ *
+ * Tags aren't saved again when their count changes. The count {@link NoteCountIndexer} stores
+ * with a tag can be behind, since bucket listeners run in no particular order, so screens that
+ * show counts read them from here and only fall back to the stored count while loading.
+ */
+public class NoteTagCounts implements Bucket.Listener<Note> {
+
+    private static final String TAG = "Simplenote.NoteTagCounts";
+    private static final long SAVE_DELAY_SECONDS = 2;
+
+    private final Bucket<Note> mNotesBucket;
+    private final File mFile;
+
+    // Lowercase tag names of each counted note and the number of notes per lowercase tag name
+    private final Map<String, Set<String>> mNoteTags = new HashMap<>();
+    private final Map<String, Integer> mCounts = new HashMap<>();
+    private boolean mLoaded;
+    private boolean mSaveScheduled;
+
+    // Notes that changed before the counts finished loading, applied once they have
+    private final Set<String> mPendingNoteKeys = new HashSet<>();
+
+    // Loading, rebuilding and saving happen off the thread that delivers bucket changes
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    public NoteTagCounts(Bucket<Note> notesBucket, File file) {
+        mNotesBucket = notesBucket;
+        mFile = file;
+    }
+
+    /**
+     * Reads the saved counts in the background, rebuilding them if there aren't any
+     */
+    public void load() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!readFile()) {
+                    rebuild();
+                }
+                applyPendingChanges();
+            }
+        });
+    }
+
+    /**
+     * Forgets every count, e.g. when the user signs out and the buckets are reset
+     */
+    public void reset() {
+        synchronized (this) {
+            mNoteTags.clear();
+            mCounts.clear();
+            mPendingNoteKeys.clear();
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mFile.exists() && !mFile.delete()) {
+                    Log.w(TAG, "Could not delete " + mFile);
+                }
+            }
+        });
+    }
+
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * The number of notes tagged with the name, or -1 if the counts haven't been loaded yet
+     */
+    public synchronized int getCount(String tagName) {
+        if (!mLoaded) return -1;
+        if (tagName == null) return 0;
+
+        Integer count = mCounts.get(tagName.toLowerCase());
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Copy of the count for every tag with at least one note, keyed by lowercase tag name
+     */
+    public synchronized Map<String, Integer> getCounts() {
+        return new HashMap<>(mCounts);
+    }
+
+    @Override
+    public void onSaveObject(Bucket<Note> bucket, Note note) {
+        update(note.getSimperiumKey(), note);
+    }
+
+    @Override
+    public void onDeleteObject(Bucket<Note> bucket, Note note) {
+        update(note.getSimperiumKey(), null);
+    }
+
+    @Override
+    public void onNetworkChange(Bucket<Note> bucket, Bucket.ChangeType type, String key) {
+        if (type == Bucket.ChangeType.INDEX) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    rebuild();
+                }
+            });
+            return;
+        }
+
+        if (key == null) return;
+
+        try {
+            update(key, bucket.get(key));
+        } catch (BucketObjectMissingException e) {
+            update(key, null);
+        }
+    }
+
+    @Override
+    public void onBeforeUpdateObject(Bucket<Note> bucket, Note object) {
+        // noop
+    }
+
+    private void update(String noteKey, Note note) {
+        Set<String> tags = note == null || note.isDeleted() ? Collections.<String>emptySet() : note.getLowercaseTags();
+
+        synchronized (this) {
+            if (!mLoaded) {
+                mPendingNoteKeys.add(noteKey);
+            } else if (setNoteTags(noteKey, tags)) {
+                scheduleSave();
+            }
+        }
+    }
+
+    private void applyPendingChanges() {
+        Set<String> noteKeys;
+        synchronized (this) {
+            noteKeys = new HashSet<>(mPendingNoteKeys);
+            mPendingNoteKeys.clear();
+        }
+
+        for (String noteKey : noteKeys) {
+            try {
+                update(noteKey, mNotesBucket.get(noteKey));
+            } catch (BucketObjectMissingException e) {
+                update(noteKey, null);
+            }
+        }
+    }
+
+    /**
+     * Moves the note's counts from its previous tags to the new ones
+     *
+     * @return true if the note's tags changed
+     */
+    private boolean setNoteTags(String noteKey, Set<String> tags) {
+        Set<String> previousTags = mNoteTags.get(noteKey);
+        if (previousTags == null) previousTags = Collections.emptySet();
+
+        if (previousTags.equals(tags)) return false;
+
+        for (String tag : previousTags) {
+            if (!tags.contains(tag)) {
+                increment(tag, -1);
+            }
+        }
+
+        for (String tag : tags) {
+            if (!previousTags.contains(tag)) {
+                increment(tag, 1);
+            }
+        }
+
+        if (tags.isEmpty()) {
+            mNoteTags.remove(noteKey);
+        } else {
+            mNoteTags.put(noteKey, tags);
+        }
+
+        return true;
+    }
+
+    private void increment(String tag, int delta) {
+        Integer count = mCounts.get(tag);
+        int newCount = (count == null ? 0 : count) + delta;
+        if (newCount > 0) {
+            mCounts.put(tag, newCount);
+        } else {
+            mCounts.remove(tag);
+        }
+    }
+
+    /**
+     * Recounts every note in the bucket, only needed when there are no saved counts or the
+     * bucket was reindexed
+     */
+    private void rebuild() {
+        Map<String, Set<String>> noteTags = new HashMap<>();
+
+        Bucket.ObjectCursor<Note> cursor = mNotesBucket.query().execute();
+        try {
+            while (cursor.moveToNext()) {
+                Note note = cursor.getObject();
+                if (note.isDeleted()) continue;
+
+                Set<String> tags = note.getLowercaseTags();
+                if (!tags.isEmpty()) {
+                    noteTags.put(cursor.getSimperiumKey(), tags);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            mNoteTags.clear();
+            mCounts.clear();
+            for (Map.Entry<String, Set<String>> entry : noteTags.entrySet()) {
+                setNoteTags(entry.getKey(), entry.getValue());
+            }
+            mLoaded = true;
+        }
+
+        save();
+    }
+
+    private void scheduleSave() {
+        if (mSaveScheduled) return;
+
+        // several changes usually arrive together so write them out in one go
+        mSaveScheduled = true;
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void save() {
+        JSONObject json = new JSONObject();
+
+        synchronized (this) {
+            mSaveScheduled = false;
+            try {
+                for (Map.Entry<String, Set<String>> entry : mNoteTags.entrySet()) {
+                    json.put(entry.getKey(), new JSONArray(entry.getValue()));
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Could not save tag counts", e);
+                return;
+            }
+        }
+
+        // write to a temporary file first so a crash never leaves half written counts behind
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            output.write(json.toString().getBytes("UTF-8"));
+            output.close();
+            output = null;
+
+            if (!tempFile.renameTo(mFile)) {
+                Log.w(TAG, "Could not replace " + mFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save tag counts", e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    /**
+     * @return true if the counts were read from the file
+     */
+    private boolean readFile() {
+        if (!mFile.exists()) return false;
+
+        InputStream input = null;
+        try {
+            input = new FileInputStream(mFile);
+            byte[] bytes = new byte[(int) mFile.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = input.read(bytes, offset, bytes.length - offset);
+                if (read == -1) break;
+                offset += read;
+            }
+
+            JSONObject json = new JSONObject(new String(bytes, 0, offset, "UTF-8"));
+
+            synchronized (this) {
+                mNoteTags.clear();
+                mCounts.clear();
+
+                Iterator<String> keys = json.keys();
+                while (keys.hasNext()) {
+                    String noteKey = keys.next();
+                    JSONArray tagsJson = json.getJSONArray(noteKey);
+                    Set<String> tags = new HashSet<>(tagsJson.length());
+                    for (int i = 0; i < tagsJson.length(); i++) {
+                        tags.add(tagsJson.getString(i));
+                    }
+                    setNoteTags(noteKey, tags);
+                }
+
+                mLoaded = true;
+            }
+            return true;
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not read tag counts, rebuilding them", e);
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+}
@@ -10,48 +10,128 @@ import com.simperium.client.BucketObjectNameInvalid;
 
 import java.net.URLEncoder;
 import java.io.UnsupportedEncodingException;
-import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
-public class NoteTagger implements Bucket.Listener<Note> {
+public class NoteTagger implements Bucket.Listener<Note>, NoteBatch.Listener {
 
     private Bucket<Tag> mTagsBucket;
     private static final String KEY_ENCODING="UTF-8";
 
+    // Keys of every tag in the tags bucket, read once and then kept current by mTagKeysUpdater
+    private final Set<String> mTagKeys = new HashSet<>();
+    private boolean mTagKeysLoaded;
+
     public NoteTagger(Bucket<Tag> tagsBucket){
         mTagsBucket = tagsBucket;
+        mTagsBucket.addListener(mTagKeysUpdater);
     }
 
     /*
     * When a note is saved check its array of tags to make sure there is a corresponding tag
-    * object and create one if necessary. Re-save all tags so their indexes are updated.
+    * object and create one if necessary. Notes are saved every few seconds while they're being
+    * edited, so tags are looked up in the known tag keys rather than the tags bucket. A tag
+    * that was deleted while notes still have it is created again on their next save.
     * */
     @Override
     public void onSaveObject(Bucket<Note> bucket, Note note){
-        // make sure we have tags
-        List<String> tags = note.getTags();
-        for (String tagName : tags) {
-            // find the tag by the lowercase tag string
-            Tag tag;
-            String tagKey = null;
+        // notes saved in a batch are tagged together when it's committed
+        if (NoteBatch.isHeld(note.getSimperiumKey())) return;
+
+        synchronized (this) {
+            // make sure we have tags
+            for (String tagName : note.getTags()) {
+                ensureTag(tagName);
+            }
+        }
+    }
+
+    /*
+    * Checks each distinct tag of the batch's notes once instead of once per note.
+    * */
+    @Override
+    public void onBatchCommitted(Bucket<Note> bucket, Set<String> noteKeys) {
+        Map<String, String> tagNames = new LinkedHashMap<>();
+        for (String noteKey : noteKeys) {
             try {
-                tagKey = URLEncoder.encode(tagName.toLowerCase(), KEY_ENCODING);
-                tag = mTagsBucket.getObject(tagKey);
-            } catch (BucketObjectMissingException e) {
-                // tag doesn't exist, so we'll create one using the key
-                try {
-                    tag = mTagsBucket.newObject(tagKey);
-                    tag.setName(tagName);
-                    tag.setIndex(mTagsBucket.count());
-                    tag.save();
-                } catch (BucketObjectNameInvalid invalid) {
-                    android.util.Log.e("Simplenote.NoteTagger", "Could not create tag object for note", invalid);
+                for (String tagName : bucket.get(noteKey).getTags()) {
+                    String lowercaseName = tagName.toLowerCase();
+                    if (!tagNames.containsKey(lowercaseName)) {
+                        tagNames.put(lowercaseName, tagName);
+                    }
                 }
-            } catch (UnsupportedEncodingException e) {
-                android.util.Log.e("Simplenote.NoteTagger", "Invalid tag key", e);
+            } catch (BucketObjectMissingException e) {
+                // deleted since it was saved, nothing to tag
+            }
+        }
+
+        synchronized (this) {
+            for (String tagName : tagNames.values()) {
+                ensureTag(tagName);
             }
         }
     }
 
+    private void ensureTag(String tagName) {
+        loadTagKeys();
+
+        // find the tag by the lowercase tag string
+        String tagKey = null;
+        try {
+            tagKey = URLEncoder.encode(tagName.toLowerCase(), KEY_ENCODING);
+            if (mTagKeys.contains(tagKey)) return;
+
+            // tag doesn't exist, so we'll create one using the key
+            Tag tag = mTagsBucket.newObject(tagKey);
+            tag.setName(tagName);
+            tag.setIndex(mTagKeys.size());
+            tag.save();
+            mTagKeys.add(tagKey);
+        } catch (BucketObjectNameInvalid invalid) {
+            android.util.Log.e("Simplenote.NoteTagger", "Could not create tag object for note", invalid);
+        } catch (UnsupportedEncodingException e) {
+            android.util.Log.e("Simplenote.NoteTagger", "Invalid tag key", e);
+        }
+    }
+
+    private synchronized void loadTagKeys() {
+        if (mTagKeysLoaded) return;
+
+        Bucket.ObjectCursor<Tag> cursor = mTagsBucket.query().execute();
+        try {
+            while (cursor.moveToNext()) {
+                mTagKeys.add(cursor.getSimperiumKey());
+            }
+        } finally {
+            cursor.close();
+        }
+        mTagKeysLoaded = true;
+    }
+
+    private synchronized void resetTagKeys() {
+        mTagKeys.clear();
+        mTagKeysLoaded = false;
+    }
+
+    /**
+     * Forgets every known tag, e.g. when the user signs out and the buckets are reset
+     */
+    public void reset() {
+        resetTagKeys();
+    }
+
+    private synchronized void setTagKnown(String tagKey, boolean known) {
+        if (!mTagKeysLoaded) return;
+
+        if (known) {
+            mTagKeys.add(tagKey);
+        } else {
+            mTagKeys.remove(tagKey);
+        }
+    }
+
     @Override
     public void onDeleteObject(Bucket<Note> noteBucket, Note note) {
         // noop
@@ -66,4 +146,37 @@ public class NoteTagger implements Bucket.Listener<Note> {
     public void onBeforeUpdateObject(Bucket<Note> bucket, Note object) {
         // noop
     }
-}
\ No newline at end of file
+
+    private final Bucket.Listener<Tag> mTagKeysUpdater = new Bucket.Listener<Tag>() {
+        @Override
+        public void onSaveObject(Bucket<Tag> bucket, Tag tag) {
+            setTagKnown(tag.getSimperiumKey(), true);
+        }
+
+        @Override
+        public void onDeleteObject(Bucket<Tag> bucket, Tag tag) {
+            setTagKnown(tag.getSimperiumKey(), false);
+        }
+
+        @Override
+        public void onNetworkChange(Bucket<Tag> bucket, Bucket.ChangeType type, String key) {
+            if (type == Bucket.ChangeType.INDEX || key == null) {
+                // read every key again the next time they're needed
+                resetTagKeys();
+                return;
+            }
+
+            try {
+                bucket.get(key);
+                setTagKnown(key, true);
+            } catch (BucketObjectMissingException e) {
+                setTagKnown(key, false);
+            }
+        }
+
+        @Override
+        public void onBeforeUpdateObject(Bucket<Tag> bucket, Tag tag) {
+            // noop
+        }
+    };
+}
@@ -3,10 +3,10 @@ package com.automattic.simplenote.models;
 import com.simperium.client.Bucket;
 import com.simperium.client.Bucket.ObjectCursor;
 import com.simperium.client.BucketObject;
+import com.simperium.client.BucketObjectMissingException;
 import com.simperium.client.BucketObjectNameInvalid;
 import com.simperium.client.BucketSchema;
 import com.simperium.client.Query;
-import com.simperium.client.Query.ComparisonType;
 
 import org.json.JSONObject;
 
@@ -19,6 +19,7 @@ public class Tag extends BucketObject {
     public static final String NOTE_COUNT_INDEX_NAME = "note_count";
     public static final String NAME_PROPERTY = "name";
     public static final String INDEX_PROPERTY = "index";
+    public static final int REMOVE_BATCH_SIZE = 100;
     protected int tagIndex;
     protected String name = "";
 
@@ -85,7 +86,26 @@ public class Tag extends BucketObject {
         }
     }
 
+    public interface OnNotesProgressListener {
+        void onNotesProgress(int updatedNotes, int totalNotes);
+
+        /**
+         * Checked between batches by the updates that can stop part way
+         */
+        boolean isCancelled();
+    }
+
     public void renameTo(String name, Bucket<Note> notesBucket)
+    throws BucketObjectNameInvalid {
+        renameTo(name, notesBucket, null);
+    }
+
+    /**
+     * Renames the tag, moving every note tagged with it to the new name in a single
+     * {@link NoteBatch}. Notes are read and saved on the calling thread so this shouldn't be
+     * called from the UI thread.
+     */
+    public void renameTo(String name, Bucket<Note> notesBucket, OnNotesProgressListener progressListener)
     throws BucketObjectNameInvalid {
         String key = name.toLowerCase();
         if (!getSimperiumKey().equals(key)) {
@@ -95,24 +115,41 @@ public class Tag extends BucketObject {
             newTag.setName(name);
             newTag.save();
             // get all the notes from tag, remove the item
-            ObjectCursor<Note> notesCursor = findNotes(notesBucket);
-            while(notesCursor.moveToNext()){
-                Note note = notesCursor.getObject();
-                List<String> tags = new ArrayList<>(note.getTags());
-                List<String> newTags = new ArrayList<>(tags.size());
-                // iterate and do a case insensitive comparison on each tag
-                for (String tag : tags) {
-                    // if it's this tag, add the new tag
-                    if (tag.toLowerCase().equals(getSimperiumKey())) {
-                        newTags.add(name);
-                    } else {
-                        newTags.add(tag);
+            List<String> noteKeys = findNoteKeys(notesBucket);
+            int totalNotes = noteKeys.size();
+            NoteBatch batch = new NoteBatch(notesBucket);
+            try {
+                for (String noteKey : noteKeys) {
+                    Note note;
+                    try {
+                        note = notesBucket.get(noteKey);
+                    } catch (BucketObjectMissingException e) {
+                        continue;
+                    }
+
+                    List<String> tags = note.getTags();
+                    List<String> newTags = new ArrayList<>(tags.size());
+                    // iterate and do a case insensitive comparison on each tag
+                    for (String tag : tags) {
+                        // if it's this tag, add the new tag
+                        if (tag.toLowerCase().equals(getSimperiumKey())) {
+                            newTags.add(name);
+                        } else {
+                            newTags.add(tag);
+                        }
+                    }
+                    note.setTags(newTags);
+                    batch.save(note);
+
+                    if (progressListener != null) {
+                        progressListener.onNotesProgress(batch.size(), totalNotes);
                     }
                 }
-                note.setTags(newTags);
-                note.save();
+            } finally {
+                batch.commit();
             }
-            notesCursor.close();
+            // save again so the new tag's note count includes the moved notes
+            newTag.save();
             delete();
         } else if(!getName().equals(name)) {
             setName(name);
@@ -120,7 +157,79 @@ public class Tag extends BucketObject {
         }
     }
 
+    /**
+     * Removes the tag from every note tagged with it, ignoring case, and then deletes the tag.
+     *
+     * Notes are saved in batches of {@link #REMOVE_BATCH_SIZE} so listeners are called once per
+     * batch. The tag is deleted last, once no note has it anymore, so NoteTagger can't recreate
+     * it part way through. If the listener is cancelled the removal stops after the current batch
+     * and the tag is kept for the notes that still have it.
+     *
+     * @return true if the tag was removed from every note and deleted
+     */
+    public boolean removeFromNotes(Bucket<Note> notesBucket, OnNotesProgressListener progressListener) {
+        List<String> noteKeys = findNoteKeys(notesBucket);
+        String tagName = getName().toLowerCase();
+        int totalNotes = noteKeys.size();
+        for (int start = 0; start < totalNotes; start += REMOVE_BATCH_SIZE) {
+            if (progressListener != null && progressListener.isCancelled()) {
+                return false;
+            }
+
+            NoteBatch batch = new NoteBatch(notesBucket);
+            try {
+                for (String noteKey : noteKeys.subList(start, Math.min(start + REMOVE_BATCH_SIZE, totalNotes))) {
+                    Note note;
+                    try {
+                        note = notesBucket.get(noteKey);
+                    } catch (BucketObjectMissingException e) {
+                        continue;
+                    }
+
+                    List<String> tags = note.getTags();
+                    List<String> newTags = new ArrayList<>(tags.size());
+                    for (String tag : tags) {
+                        if (!tag.toLowerCase().equals(tagName)) {
+                            newTags.add(tag);
+                        }
+                    }
+
+                    if (newTags.size() != tags.size()) {
+                        note.setTags(newTags);
+                        batch.save(note);
+                    }
+                }
+            } finally {
+                batch.commit();
+            }
+
+            if (progressListener != null) {
+                progressListener.onNotesProgress(Math.min(start + REMOVE_BATCH_SIZE, totalNotes), totalNotes);
+            }
+        }
+
+        delete();
+        return true;
+    }
+
     public ObjectCursor<Note> findNotes(Bucket<Note> notesBucket){
-        return notesBucket.query().where("tags", ComparisonType.LIKE, getSimperiumKey()).execute();
+        return Note.withTag(notesBucket.query(), getName()).execute();
+    }
+
+    /**
+     * Reads the keys of the tag's notes up front, since saving the notes while the query is read
+     * changes the rows it matches and would skip some of them
+     */
+    private List<String> findNoteKeys(Bucket<Note> notesBucket) {
+        List<String> noteKeys = new ArrayList<>();
+        ObjectCursor<Note> notesCursor = findNotes(notesBucket);
+        try {
+            while (notesCursor.moveToNext()) {
+                noteKeys.add(notesCursor.getSimperiumKey());
+            }
+        } finally {
+            notesCursor.close();
+        }
+        return noteKeys;
     }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+package com.automattic.simplenote.models;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.automattic.simplenote.utils.PrefUtils;
+import com.simperium.client.Bucket;
+import com.simperium.client.BucketObjectMissingException;
+import com.simperium.client.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the tag index to notes saved before {@link NoteIndexer} indexed tags. Tag queries keep
+ * matching the tags column until every note has been saved again and the index was checked.
+ *
+ * The note keys are read before any note is saved, since saving a note can move it in a query
+ * that is still being read. Notes are saved in key order and the last saved key is remembered
+ * so a build that was interrupted resumes where it stopped. The notes don't change, so they're
+ * held in a {@link NoteBatch} that is released without telling the bucket's listeners.
+ *
+ * Notes that were synced after the tag index existed already have it, so the index is checked
+ * first and notes are only saved if it's incomplete.
+ */
+public class TagIndexBuilder implements Runnable {
+
+    private static final String TAG = "Simplenote.TagIndexBuilder";
+
+    static final int BATCH_SIZE = 100;
+
+    private final Context mContext;
+    private final Bucket<Note> mNotesBucket;
+    private boolean mCancelled;
+
+    public TagIndexBuilder(Context context, Bucket<Note> notesBucket) {
+        mContext = context.getApplicationContext();
+        mNotesBucket = notesBucket;
+    }
+
+    public static boolean isBuilt(Context context) {
+        return PrefUtils.getBoolPref(context, PrefUtils.PREF_TAG_INDEX_BUILT, false);
+    }
+
+    /**
+     * Forgets the index was built, e.g. when the user signs out. Tag queries match the tags
+     * column until the index of the next account's notes was checked.
+     */
+    public static void reset(Context context) {
+        Note.setTagIndexReady(false);
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(PrefUtils.PREF_TAG_INDEX_BUILT)
+                .remove(PrefUtils.PREF_TAG_INDEX_RESUME_KEY)
+                .apply();
+    }
+
+    /**
+     * Stops the build before the next note is saved. A cancelled build never marks the index
+     * as built or remembers where it stopped.
+     */
+    public synchronized void cancel() {
+        mCancelled = true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public void run() {
+        build();
+    }
+
+    /**
+     * Saves the notes that weren't saved by an earlier build and checks the index of every note
+     *
+     * @return true if every note is in the tag index
+     */
+    public boolean build() {
+        List<String> noteKeys = readNoteKeys();
+        if (isIndexComplete(noteKeys)) {
+            return finish();
+        }
+
+        Collections.sort(noteKeys);
+
+        String resumeKey = PrefUtils.getStringPref(mContext, PrefUtils.PREF_TAG_INDEX_RESUME_KEY, null);
+        NoteBatch batch = new NoteBatch(mNotesBucket);
+        String lastKey = null;
+
+        try {
+            for (String noteKey : noteKeys) {
+                if (resumeKey != null && noteKey.compareTo(resumeKey) <= 0) continue;
+                if (isCancelled()) return false;
+
+                try {
+                    // saving without changes rebuilds the note's indexes
+                    batch.save(mNotesBucket.get(noteKey));
+                } catch (BucketObjectMissingException e) {
+                    // note was deleted since the keys were read
+                }
+                lastKey = noteKey;
+
+                if (batch.size() >= BATCH_SIZE) {
+                    batch.release();
+                    saveResumeKey(lastKey);
+                    batch = new NoteBatch(mNotesBucket);
+                }
+            }
+        } finally {
+            batch.release();
+        }
+
+        if (!isIndexComplete(noteKeys)) {
+            // every note is saved again by the next build, tag queries match the tags column until then
+            Log.w(TAG, "Tag index is incomplete after saving every note");
+            saveResumeKey(null);
+            return false;
+        }
+
+        return finish();
+    }
+
+    private synchronized boolean finish() {
+        if (mCancelled) return false;
+
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putBoolean(PrefUtils.PREF_TAG_INDEX_BUILT, true)
+                .remove(PrefUtils.PREF_TAG_INDEX_RESUME_KEY)
+                .apply();
+        Note.setTagIndexReady(true);
+        return true;
+    }
+
+    private List<String> readNoteKeys() {
+        List<String> noteKeys = new ArrayList<>();
+
+        Bucket.ObjectCursor<Note> cursor = mNotesBucket.query().execute();
+        try {
+            while (cursor.moveToNext()) {
+                noteKeys.add(cursor.getSimperiumKey());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return noteKeys;
+    }
+
+    /**
+     * Whether every tag of the notes finds the note through the tag index
+     */
+    private boolean isIndexComplete(List<String> noteKeys) {
+        Map<String, Set<String>> tagNoteKeys = new HashMap<>();
+        for (String noteKey : noteKeys) {
+            try {
+                for (String tag : mNotesBucket.get(noteKey).getLowercaseTags()) {
+                    Set<String> keys = tagNoteKeys.get(tag);
+                    if (keys == null) {
+                        keys = new HashSet<>();
+                        tagNoteKeys.put(tag, keys);
+                    }
+                    keys.add(noteKey);
+                }
+            } catch (BucketObjectMissingException e) {
+                // note was deleted since the keys were read
+            }
+        }
+
+        for (Map.Entry<String, Set<String>> entry : tagNoteKeys.entrySet()) {
+            Set<String> missingKeys = new HashSet<>(entry.getValue());
+
+            Bucket.ObjectCursor<Note> cursor = mNotesBucket.query()
+                    .where(Note.TAG_INDEX_NAME, Query.ComparisonType.EQUAL_TO, entry.getKey())
+                    .execute();
+            try {
+                while (cursor.moveToNext() && !missingKeys.isEmpty()) {
+                    missingKeys.remove(cursor.getSimperiumKey());
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (!missingKeys.isEmpty()) return false;
+        }
+
+        return true;
+    }
+
+    private synchronized void saveResumeKey(String noteKey) {
+        if (mCancelled) return;
+
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(PrefUtils.PREF_TAG_INDEX_RESUME_KEY, noteKey)
+                .apply();
+    }
+}
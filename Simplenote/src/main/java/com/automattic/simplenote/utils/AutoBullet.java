@@ -2,49 +2,49 @@ package com.automattic.simplenote.utils;
 
 import android.text.Editable;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+/**
+ * Continues lists while typing: when a line break is typed after a list item, the next item
+ * is started with the same indent. Typing a line break after an empty item ends the list, or
+ * outdents it by one space when it's indented.
+ *
+ * Lists can be bulleted ("- ", "* " or "+ "), numbered ("1. " or "1) ") or checklists
+ * ("- [ ] " or "- [x] "). Only the line before the cursor is read, straight from the editable.
+ */
 public class AutoBullet {
 
-    private static final String PATTERN_BULLET = "^([\\s]*)(-|\\*|\\+){1}[\\s]+(.*)$";
-    private static final String STR_LINE_BREAK = System.getProperty("line.separator");
-    private static final String STR_SPACE = " ";
+    private static final char LINE_BREAK = '\n';
+    private static final String STR_LINE_BREAK = "\n";
+    private static final char SPACE = ' ';
+    private static final String CHECKBOX = "[ ]";
+    // longer numbers aren't treated as list items so they can't overflow
+    private static final int MAX_NUMBER_DIGITS = 9;
 
     public static void apply(Editable editable, int oldCursorPosition, int newCursorPosition) {
-        if (!isValidCursorIncrement(oldCursorPosition, newCursorPosition)) {
+        if (!isValidCursorIncrement(oldCursorPosition, newCursorPosition) || newCursorPosition > editable.length()) {
             return;
         }
 
-        String noteContent = editable.toString();
-        String prevChar = noteContent.substring(newCursorPosition - 1, newCursorPosition);
-
-        if (prevChar.equals(STR_LINE_BREAK)) {
-            int prevParagraphEnd = newCursorPosition - 1;
-            int prevParagraphStart = noteContent.lastIndexOf(STR_LINE_BREAK, prevParagraphEnd - 1);
-            prevParagraphStart++; // ++ because we don't actually include the previous linebreak
-
-            String prevParagraph = noteContent.substring(prevParagraphStart, prevParagraphEnd);
-
-            BulletMetadata metadata = extractBulletMetadata(prevParagraph);
+        if (editable.charAt(newCursorPosition - 1) != LINE_BREAK) {
+            return;
+        }
 
-            if (metadata.isBullet) {
-                String bullet;
+        int prevParagraphEnd = newCursorPosition - 1;
+        int prevParagraphStart = prevParagraphEnd;
+        while (prevParagraphStart > 0 && editable.charAt(prevParagraphStart - 1) != LINE_BREAK) {
+            prevParagraphStart--;
+        }
 
-                if (!metadata.isEmptyBullet) {
-                    bullet = buildBullet(metadata);
-                    editable.insert(newCursorPosition, bullet);
-                } else {
-                    if (metadata.numSpacesPrefixed > 0) {
-                        metadata.numSpacesPrefixed -= 1;
-                        bullet = buildBullet(metadata);
-                    } else {
-                        bullet = STR_LINE_BREAK;
-                    }
+        ListItem item = ListItem.parse(editable, prevParagraphStart, prevParagraphEnd);
+        if (item == null) {
+            return;
+        }
 
-                    editable.replace(prevParagraphStart, newCursorPosition, bullet);
-                }
-            }
+        if (!item.isEmpty) {
+            editable.insert(newCursorPosition, item.buildNext());
+        } else if (item.numSpacesPrefixed > 0) {
+            editable.replace(prevParagraphStart, newCursorPosition, item.buildOutdented());
+        } else {
+            editable.replace(prevParagraphStart, newCursorPosition, STR_LINE_BREAK);
         }
     }
 
@@ -52,36 +52,112 @@ public class AutoBullet {
         return newCursorPosition > 0 && newCursorPosition > oldCursorPosition;
     }
 
-    private static String buildBullet(BulletMetadata metadata) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < metadata.numSpacesPrefixed; i++) {
-            sb.append(STR_SPACE);
-        }
-        sb.append(metadata.bulletChar);
-        sb.append(STR_SPACE);
-        return sb.toString();
+    // Same chars as \s in a regular expression
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
-    private static BulletMetadata extractBulletMetadata(String input) {
-        BulletMetadata metadata = new BulletMetadata();
+    private static class ListItem {
+        int numSpacesPrefixed;
+        // bullet char, or the delimiter after the number of a numbered item
+        char marker;
+        // -1 for bulleted items
+        int number = -1;
+        boolean isChecklist;
+        boolean isEmpty;
+
+        /**
+         * Reads the list item on the line between start and end
+         *
+         * @return null if the line isn't a list item
+         */
+        static ListItem parse(CharSequence text, int start, int end) {
+            ListItem item = new ListItem();
+
+            int i = start;
+            while (i < end && isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            item.numSpacesPrefixed = i - start;
+            if (i == end) return null;
+
+            char c = text.charAt(i);
+            if (c == '-' || c == '*' || c == '+') {
+                item.marker = c;
+                i++;
+            } else if (c >= '0' && c <= '9') {
+                int numberStart = i;
+                int number = 0;
+                while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    number = number * 10 + (text.charAt(i) - '0');
+                    i++;
+                }
+                if (i - numberStart > MAX_NUMBER_DIGITS || i == end) return null;
+
+                c = text.charAt(i);
+                if (c != '.' && c != ')') return null;
+                item.marker = c;
+                item.number = number;
+                i++;
+            } else {
+                return null;
+            }
+
+            // the marker has to be followed by whitespace
+            if (i == end || !isWhitespace(text.charAt(i))) return null;
+            while (i < end && isWhitespace(text.charAt(i))) {
+                i++;
+            }
+
+            if (item.number == -1 && isCheckbox(text, i, end)) {
+                item.isChecklist = true;
+                i += CHECKBOX.length();
+            }
 
-        Pattern pattern = Pattern.compile(PATTERN_BULLET);
-        Matcher matcher = pattern.matcher(input);
+            item.isEmpty = true;
+            for (; i < end; i++) {
+                if (text.charAt(i) > ' ') {
+                    item.isEmpty = false;
+                    break;
+                }
+            }
 
-        if (matcher.find()) {
-            metadata.isBullet = true;
-            metadata.numSpacesPrefixed = matcher.group(1).length();
-            metadata.bulletChar = matcher.group(2);
-            metadata.isEmptyBullet = matcher.group(3).trim().isEmpty();
+            return item;
         }
 
-        return metadata;
-    }
+        // "[ ]", "[x]" or "[X]" followed by whitespace or the end of the line
+        private static boolean isCheckbox(CharSequence text, int start, int end) {
+            if (start + CHECKBOX.length() > end) return false;
+
+            char checked = text.charAt(start + 1);
+            return text.charAt(start) == '[' && (checked == ' ' || checked == 'x' || checked == 'X') &&
+                    text.charAt(start + 2) == ']' &&
+                    (start + 3 == end || isWhitespace(text.charAt(start + 3)));
+        }
 
-    private static class BulletMetadata {
-        public boolean isBullet = false;
-        public int numSpacesPrefixed;
-        public String bulletChar;
-        public boolean isEmptyBullet = false;
+        String buildNext() {
+            return build(numSpacesPrefixed, number == -1 ? -1 : number + 1);
+        }
+
+        String buildOutdented() {
+            return build(numSpacesPrefixed - 1, number);
+        }
+
+        private String build(int spaces, int itemNumber) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < spaces; i++) {
+                sb.append(SPACE);
+            }
+            if (itemNumber != -1) {
+                sb.append(itemNumber);
+            }
+            sb.append(marker);
+            sb.append(SPACE);
+            if (isChecklist) {
+                sb.append(CHECKBOX);
+                sb.append(SPACE);
+            }
+            return sb.toString();
+        }
     }
 }
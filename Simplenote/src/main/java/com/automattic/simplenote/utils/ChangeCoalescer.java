@@ -0,0 +1,145 @@
+package com.automattic.simplenote.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Batches bucket change notifications so a consumer refreshes at most once per interval.
+ * Changes may be posted from any thread; the consumer is always called on the main thread
+ * with the de-duplicated keys that changed since its last call.
+ */
+public class ChangeCoalescer {
+
+    public static final long DEFAULT_INTERVAL_MS = 100;
+
+    public interface OnChangesListener {
+        /**
+         * @param keys         the keys that changed, in the order they were first posted
+         * @param fullRefresh  true if any of the merged changes asked for everything to be reloaded
+         */
+        void onChanges(Set<String> keys, boolean fullRefresh);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final long mIntervalMs;
+    private final OnChangesListener mListener;
+
+    private Set<String> mPendingKeys = new LinkedHashSet<>();
+    private boolean mPendingFullRefresh;
+    private boolean mScheduled;
+    private long mLastDispatchTime;
+
+    private int mEventCount;
+    private int mMergedEventCount;
+    private int mDispatchCount;
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    public ChangeCoalescer(OnChangesListener listener) {
+        this(DEFAULT_INTERVAL_MS, listener);
+    }
+
+    public ChangeCoalescer(long intervalMs, OnChangesListener listener) {
+        mIntervalMs = intervalMs;
+        mListener = listener;
+    }
+
+    /**
+     * Queues a change to a single object. A null key asks for a full refresh.
+     */
+    public synchronized void post(String key) {
+        if (key == null) {
+            mPendingFullRefresh = true;
+        } else {
+            mPendingKeys.add(key);
+        }
+
+        countAndSchedule();
+    }
+
+    /**
+     * Queues changes to several objects at once, counted as a single change
+     */
+    public synchronized void post(Collection<String> keys) {
+        mPendingKeys.addAll(keys);
+        countAndSchedule();
+    }
+
+    /**
+     * Queues a change that requires the consumer to reload everything, e.g. a bucket reindex
+     */
+    public synchronized void postFullRefresh() {
+        mPendingFullRefresh = true;
+        countAndSchedule();
+    }
+
+    /**
+     * Drops pending changes without dispatching them, e.g. when the consumer goes away
+     */
+    public synchronized void cancel() {
+        mHandler.removeCallbacks(mDispatchRunnable);
+        mPendingKeys = new LinkedHashSet<>();
+        mPendingFullRefresh = false;
+        mScheduled = false;
+    }
+
+    // Total number of changes posted
+    public synchronized int getEventCount() {
+        return mEventCount;
+    }
+
+    // Number of changes that were folded into another change instead of causing a refresh
+    public synchronized int getMergedEventCount() {
+        return mMergedEventCount;
+    }
+
+    // Number of times the listener was called
+    public synchronized int getDispatchCount() {
+        return mDispatchCount;
+    }
+
+    private void countAndSchedule() {
+        mEventCount++;
+
+        if (mScheduled) {
+            // Folded into the dispatch that's already scheduled
+            mMergedEventCount++;
+            return;
+        }
+
+        // Dispatch right away after a quiet period, otherwise wait out the rest of the interval
+        long dispatchTime = Math.max(SystemClock.uptimeMillis(), mLastDispatchTime + mIntervalMs);
+        mScheduled = true;
+        mHandler.postAtTime(mDispatchRunnable, dispatchTime);
+    }
+
+    private void dispatch() {
+        Set<String> keys;
+        boolean fullRefresh;
+
+        synchronized (this) {
+            if (!mScheduled) return;
+
+            keys = mPendingKeys;
+            fullRefresh = mPendingFullRefresh;
+            mPendingKeys = new LinkedHashSet<>();
+            mPendingFullRefresh = false;
+            mScheduled = false;
+            mLastDispatchTime = SystemClock.uptimeMillis();
+            mDispatchCount++;
+        }
+
+        mListener.onChanges(Collections.unmodifiableSet(keys), fullRefresh);
+    }
+}
@@ -0,0 +1,246 @@
+package com.automattic.simplenote.utils;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Shows rendered markdown in a web view, loading the page once and then only replacing the
+ * top level blocks that changed so the view keeps its scroll position and doesn't lay out the
+ * whole document again.
+ *
+ * Each top level block of the HTML is wrapped in its own element. When new HTML is shown, the
+ * blocks it shares with the page at its start and end are kept and the blocks in between are
+ * replaced through {@link WebView#evaluateJavascript}. The page's content security policy
+ * blocks every script of the note itself, scripts evaluated by the app aren't affected.
+ *
+ * The page is loaded again with the whole HTML before KitKat, which can't evaluate scripts.
+ * All methods must be called on the UI thread.
+ */
+public class MarkdownPreviewUpdater {
+
+    private static final String BASE_URL = "file:///android_asset/";
+    private static final String CONTENT_ID = "content";
+    private static final String PAGE_HEAD = "<meta http-equiv=\"Content-Security-Policy\" content=\"script-src 'none'\" />";
+
+    // Removes `count` blocks at `start` and inserts the given blocks in their place
+    private static final String PATCH_SCRIPT = "(function(start, count, blocks) {" +
+            "var content = document.getElementById('" + CONTENT_ID + "');" +
+            "for (var i = 0; i < count; i++) content.removeChild(content.children[start]);" +
+            "var next = content.children[start] || null;" +
+            "for (var j = 0; j < blocks.length; j++) {" +
+            "var block = document.createElement('div');" +
+            "block.innerHTML = blocks[j];" +
+            "content.insertBefore(block, next);" +
+            "}" +
+            "})(%d, %d, %s)";
+
+    // Links with these schemes are opened by other apps, other links are ignored
+    private static final Set<String> EXTERNAL_SCHEMES = new HashSet<>(Arrays.asList("http", "https", "mailto"));
+
+    private static final Set<String> VOID_ELEMENTS = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta",
+            "param", "source", "track", "wbr"));
+
+    private final WebView mWebView;
+    private final String mCss;
+
+    // Blocks on the page, or null before a page was loaded
+    private List<String> mBlocks;
+    private boolean mIsPageLoading;
+    // Blocks to show once the page finished loading
+    private List<String> mPendingBlocks;
+
+    public MarkdownPreviewUpdater(WebView webView, String css) {
+        mWebView = webView;
+        mCss = css;
+
+        if (canPatch()) {
+            enableScripts();
+        }
+
+        mWebView.setWebViewClient(new WebViewClient() {
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                // a link replaced the page, it's loaded again with the next HTML
+                if (!mIsPageLoading) {
+                    mBlocks = null;
+                }
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                mIsPageLoading = false;
+
+                if (mPendingBlocks != null) {
+                    List<String> blocks = mPendingBlocks;
+                    mPendingBlocks = null;
+                    showBlocks(blocks);
+                }
+            }
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                // links within the note and to the app's assets are followed in the preview
+                if (url.startsWith(BASE_URL) || url.startsWith("#")) return false;
+
+                Uri uri = Uri.parse(url);
+                if (EXTERNAL_SCHEMES.contains(uri.getScheme())) {
+                    try {
+                        view.getContext().startActivity(new Intent(Intent.ACTION_VIEW, uri));
+                    } catch (ActivityNotFoundException e) {
+                        // nothing can open the link
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    public void setHtml(String html) {
+        List<String> blocks = splitBlocks(html);
+
+        if (mIsPageLoading) {
+            mPendingBlocks = blocks;
+        } else {
+            showBlocks(blocks);
+        }
+    }
+
+    private void showBlocks(List<String> blocks) {
+        if (mBlocks == null || !canPatch()) {
+            loadPage(blocks);
+            return;
+        }
+
+        // blocks both documents start and end with are left alone
+        int oldSize = mBlocks.size();
+        int newSize = blocks.size();
+        int start = 0;
+        while (start < oldSize && start < newSize && isSameBlock(mBlocks.get(start), blocks.get(start))) {
+            start++;
+        }
+
+        int oldEnd = oldSize;
+        int newEnd = newSize;
+        while (oldEnd > start && newEnd > start && isSameBlock(mBlocks.get(oldEnd - 1), blocks.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+        }
+
+        mBlocks = blocks;
+        if (oldEnd == start && newEnd == start) return;
+
+        evaluatePatch(start, oldEnd - start, blocks.subList(start, newEnd));
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void evaluatePatch(int start, int count, List<String> blocks) {
+        String blocksJson = new JSONArray(blocks).toString();
+        mWebView.evaluateJavascript(String.format(Locale.US, PATCH_SCRIPT, start, count, blocksJson), null);
+    }
+
+    private void loadPage(List<String> blocks) {
+        StringBuilder page = new StringBuilder(PAGE_HEAD).append(mCss);
+        page.append("<div id=\"").append(CONTENT_ID).append("\">");
+        for (String block : blocks) {
+            page.append("<div>").append(block).append("</div>");
+        }
+        page.append("</div>");
+
+        mBlocks = blocks;
+        mPendingBlocks = null;
+        mIsPageLoading = true;
+        mWebView.loadDataWithBaseURL(BASE_URL, page.toString(), "text/html", "utf-8", null);
+    }
+
+    // Block hashes are cached by the strings, so differing blocks are usually told apart by them
+    private static boolean isSameBlock(String block, String otherBlock) {
+        return block.hashCode() == otherBlock.hashCode() && block.equals(otherBlock);
+    }
+
+    private static boolean canPatch() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    @SuppressLint("SetJavaScriptEnabled")
+    private void enableScripts() {
+        mWebView.getSettings().setJavaScriptEnabled(true);
+    }
+
+    /**
+     * Splits HTML between its top level elements. Text that isn't in an element stays with the
+     * element before it and unclosed elements keep the rest of the HTML in one block, so the
+     * blocks always add up to the whole HTML.
+     */
+    static List<String> splitBlocks(String html) {
+        if (html.isEmpty()) return Collections.emptyList();
+
+        List<String> blocks = new ArrayList<>();
+        int blockStart = 0;
+        int depth = 0;
+        int i = 0;
+        int length = html.length();
+
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c != '<') {
+                if (c == '\n' && depth == 0 && i + 1 < length) {
+                    blocks.add(html.substring(blockStart, i + 1));
+                    blockStart = i + 1;
+                }
+                i++;
+                continue;
+            }
+
+            if (html.startsWith("<!--", i)) {
+                int commentEnd = html.indexOf("-->", i + 4);
+                i = commentEnd == -1 ? length : commentEnd + 3;
+                continue;
+            }
+
+            int tagEnd = html.indexOf('>', i + 1);
+            if (tagEnd == -1) break;
+
+            boolean isClosing = i + 1 < tagEnd && html.charAt(i + 1) == '/';
+            int nameStart = isClosing ? i + 2 : i + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < tagEnd && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+                nameEnd++;
+            }
+
+            if (nameEnd > nameStart) {
+                String name = html.substring(nameStart, nameEnd).toLowerCase(Locale.US);
+                boolean isSelfClosing = html.charAt(tagEnd - 1) == '/';
+                if (isClosing) {
+                    depth = Math.max(0, depth - 1);
+                } else if (!isSelfClosing && !VOID_ELEMENTS.contains(name)) {
+                    depth++;
+                }
+            }
+            i = tagEnd + 1;
+        }
+
+        if (blockStart < length) {
+            blocks.add(html.substring(blockStart));
+        }
+
+        return blocks;
+    }
+}
@@ -0,0 +1,167 @@
+package com.automattic.simplenote.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.automattic.simplenote.BuildConfig;
+import com.commonsware.cwac.anddown.AndDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders note content to HTML on a background thread so previews never block the UI thread.
+ *
+ * Rendered HTML is cached by note key and content, so switching back to a note or saving it
+ * without edits doesn't render it again. Each view showing a preview uses its own renderer,
+ * which only delivers the HTML of the latest content it was asked to render.
+ *
+ * All instance methods must be called on the UI thread.
+ */
+public class MarkdownRenderer {
+
+    public interface OnRenderedListener {
+        /**
+         * Called on the UI thread with the HTML of the latest content passed to {@link #render}
+         */
+        void onRendered(String html);
+    }
+
+    private static final String TAG = "Simplenote.MarkdownRenderer";
+
+    // Maximum number of chars of content and HTML kept in the cache
+    private static final int CACHE_SIZE = 1024 * 1024;
+
+    // All renderers share one background thread and cache
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final LruCache<String, Rendering> sCache = new LruCache<String, Rendering>(CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String key, Rendering rendering) {
+            return key.length() + rendering.content.length() + rendering.html.length();
+        }
+    };
+
+    private static final Object sStatsLock = new Object();
+    private static int sRenderCount;
+    private static int sCacheHitCount;
+    private static long sTotalRenderMs;
+    private static long sMaxRenderMs;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Incremented for every request, HTML rendered for an older request is dropped
+    private int mGeneration;
+
+    /**
+     * Renders the content, calling the listener right away when it's in the cache
+     *
+     * @param noteKey  key of the note the content belongs to, or null if it isn't known
+     */
+    public void render(String noteKey, final String content, final OnRenderedListener listener) {
+        final int generation = ++mGeneration;
+        final String cacheKey = cacheKey(noteKey, content);
+
+        Rendering cached = sCache.get(cacheKey);
+        if (cached != null && cached.content.equals(content)) {
+            synchronized (sStatsLock) {
+                sCacheHitCount++;
+            }
+            listener.onRendered(cached.html);
+            return;
+        }
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = SystemClock.elapsedRealtime();
+                final String html = new AndDown().markdownToHtml(content);
+                long renderMs = SystemClock.elapsedRealtime() - startTime;
+
+                sCache.put(cacheKey, new Rendering(content, html));
+                recordRender(renderMs, content.length());
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            listener.onRendered(html);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops HTML that is being rendered, e.g. when the preview is hidden
+     */
+    public void cancel() {
+        mGeneration++;
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    // Number of times content was rendered rather than read from the cache
+    public static int getRenderCount() {
+        synchronized (sStatsLock) {
+            return sRenderCount;
+        }
+    }
+
+    // Number of times rendered HTML was read from the cache
+    public static int getCacheHitCount() {
+        synchronized (sStatsLock) {
+            return sCacheHitCount;
+        }
+    }
+
+    // Average time spent rendering content that wasn't in the cache
+    public static long getAverageRenderMs() {
+        synchronized (sStatsLock) {
+            return sRenderCount == 0 ? 0 : sTotalRenderMs / sRenderCount;
+        }
+    }
+
+    public static long getMaxRenderMs() {
+        synchronized (sStatsLock) {
+            return sMaxRenderMs;
+        }
+    }
+
+    /**
+     * Forgets every rendered note, e.g. when the user signs out
+     */
+    public static void clearCache() {
+        sCache.evictAll();
+    }
+
+    private static void recordRender(long renderMs, int contentLength) {
+        synchronized (sStatsLock) {
+            sRenderCount++;
+            sTotalRenderMs += renderMs;
+            sMaxRenderMs = Math.max(sMaxRenderMs, renderMs);
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, String.format("Rendered %d chars in %dms, %d renders averaging %dms, %d cache hits",
+                    contentLength, renderMs, getRenderCount(), getAverageRenderMs(), getCacheHitCount()));
+        }
+    }
+
+    // The hash keeps keys short, the content is compared on lookup in case two hashes collide
+    private static String cacheKey(String noteKey, String content) {
+        return noteKey + ":" + content.length() + ":" + content.hashCode();
+    }
+
+    private static class Rendering {
+        final String content;
+        final String html;
+
+        Rendering(String content, String html) {
+            this.content = content;
+            this.html = html;
+        }
+    }
+}
@@ -10,7 +10,10 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MatchOffsetHighlighter implements Runnable {
 
@@ -41,38 +44,23 @@ public class MatchOffsetHighlighter implements Runnable {
 
     }
 
+    // All highlighters share one background thread. Queued and running highlights return as soon as
+    // they see a newer request, which is checked before and while the offsets are scanned.
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
     private SpanFactory mFactory;
-    private Thread mThread;
+    private Future<?> mTask;
     private TextView mTextView;
     private String mMatches;
     private int mIndex;
     private Spannable mText;
-    private boolean mStopped = false;
-
-    protected static OnMatchListener sListener = new DefaultMatcher();
-
-    private OnMatchListener mListener = new OnMatchListener() {
-
-        @Override
-        public void onMatch(final SpanFactory factory, final Spannable text, final int start, final int end) {
-
-            if (mTextView == null) return;
-
-            Handler handler = mTextView.getHandler();
-            if (handler == null) return;
+    // reused between highlights so parsing the offsets doesn't allocate
+    private final MatchOffsets mOffsets = new MatchOffsets();
 
-            handler.post(new Runnable() {
+    // Incremented whenever matches are requested or stopped, results from an older generation are dropped
+    private final AtomicInteger mGeneration = new AtomicInteger();
 
-                @Override
-                public void run(){
-                    if (mStopped) return;
-                    sListener.onMatch(factory, text, start, end);
-                }
-
-            });
-        }
-
-    };
+    protected static OnMatchListener sListener = new DefaultMatcher();
 
     public MatchOffsetHighlighter(SpanFactory factory, TextView textView) {
         mFactory = factory;
@@ -81,21 +69,32 @@ public class MatchOffsetHighlighter implements Runnable {
 
     @Override
     public void run(){
-        highlightMatches(mText, mMatches, mIndex, mFactory, mListener);
+        highlight(mGeneration.get(), mText, mMatches, mIndex);
     }
 
-    public void start(){
+    public synchronized void start(){
         // if there are no matches, we don't have to do anything
         if (TextUtils.isEmpty(mMatches)) return;
 
-        mThread = new Thread(this);
-        mStopped = false;
-        mThread.start();
+        final int generation = mGeneration.get();
+        final Spannable text = mText;
+        final String matches = mMatches;
+        final int columnIndex = mIndex;
+
+        mTask = sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                highlight(generation, text, matches, columnIndex);
+            }
+        });
     }
 
-    public void stop(){
-        mStopped = true;
-        if (mThread != null) mThread.interrupt();
+    public synchronized void stop(){
+        mGeneration.incrementAndGet();
+        if (mTask != null) {
+            mTask.cancel(true);
+            mTask = null;
+        }
     }
 
     public void highlightMatches(String matches, int columnIndex) {
@@ -108,6 +107,42 @@ public class MatchOffsetHighlighter implements Runnable {
         }
     }
 
+    /**
+     * Finds every match in the background and applies all of their spans in a single post
+     * to the UI thread
+     */
+    private void highlight(final int generation, final Spannable text, String matches, int columnIndex) {
+        if (generation != mGeneration.get()) return;
+
+        final List<int[]> ranges = new ArrayList<>();
+
+        synchronized (mOffsets) {
+            mOffsets.parse(matches);
+            highlightMatches(text, mOffsets, columnIndex, mFactory, new OnMatchListener() {
+                @Override
+                public void onMatch(SpanFactory factory, Spannable content, int start, int end) {
+                    ranges.add(new int[]{ start, end });
+                }
+            }, mGeneration, generation);
+        }
+
+        if (ranges.isEmpty() || generation != mGeneration.get()) return;
+
+        Handler handler = mTextView.getHandler();
+        if (handler == null) return;
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration.get()) return;
+
+                for (int[] range : ranges) {
+                    sListener.onMatch(mFactory, text, range[0], range[1]);
+                }
+            }
+        });
+    }
+
     public static void highlightMatches(Spannable content, String matches, int columnIndex,
     SpanFactory factory) {
 
@@ -119,27 +154,36 @@ public class MatchOffsetHighlighter implements Runnable {
 
         if (TextUtils.isEmpty(matches)) return;
 
-        Scanner scanner = new Scanner(matches);
-        int count = 0;
-
-        int total_offset = 0;
+        MatchOffsets offsets = new MatchOffsets();
+        offsets.parse(matches);
+        highlightMatches(content, offsets, columnIndex, factory, listener);
+    }
 
-        // TODO: keep track of offsets and last index so we don't have to recalculate the entire byte length for every match which is pretty memory intensive
-        while (scanner.hasNext()) {
+    public static void highlightMatches(Spannable content, MatchOffsets offsets, int columnIndex,
+        SpanFactory factory, OnMatchListener listener) {
 
-            if (Thread.interrupted()) return;
+        highlightMatches(content, offsets, columnIndex, factory, listener, null, 0);
+    }
 
-            int column = scanner.nextInt();
-            int token = scanner.nextInt();
-            int start = scanner.nextInt();
-            int length = scanner.nextInt();
+    /**
+     * Stops scanning once the current generation is no longer the given one, if there is one
+     */
+    private static void highlightMatches(Spannable content, MatchOffsets offsets, int columnIndex,
+        SpanFactory factory, OnMatchListener listener, AtomicInteger currentGeneration, int generation) {
 
-            if (column != columnIndex) continue;
+        // offsets are in UTF-8 bytes and come in ascending order, so one pass over the content converts them all
+        Utf8OffsetTranslator translator = new Utf8OffsetTranslator(content);
 
-            int span_start = start + getByteOffset(content, 0, start);
-            int span_end = span_start + length + getByteOffset(content, start, start + length);
+        for (int i = 0; i < offsets.getCount(); i++) {
 
             if (Thread.interrupted()) return;
+            if (currentGeneration != null && currentGeneration.get() != generation) return;
+
+            if (offsets.getColumn(i) != columnIndex) continue;
+
+            int start = offsets.getStart(i);
+            int span_start = translator.toCharOffset(start);
+            int span_end = translator.toCharOffset(start + offsets.getLength(i));
 
             listener.onMatch(factory, content, span_start, span_end);
 
@@ -158,7 +202,7 @@ public class MatchOffsetHighlighter implements Runnable {
 
     static public final String CHARSET = "UTF-8";
 
-    // TODO: get ride of memory pressure by preventing the toString()
+    // Difference between the char and byte length of a range, see Utf8OffsetTranslator for converting offsets
     protected static int getByteOffset(CharSequence text, int start, int end) {
         String source = text.toString();
         String substring = "";
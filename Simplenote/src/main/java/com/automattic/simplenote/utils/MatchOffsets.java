@@ -0,0 +1,97 @@
+package com.automattic.simplenote.utils;
+
+/**
+ * Parsed value of a SQLite fulltext offsets() column, e.g. "1 0 6 5 0 0 2 1". Each match is
+ * four integers:
+ * 1. The column from the full text table
+ * 2. The index of the term from the search
+ * 3. The byte offset of the start of the match
+ * 4. The length of the match in bytes
+ *
+ * The values are kept in a primitive buffer that is reused by later calls to {@link #parse},
+ * so parsing doesn't allocate once the buffer is large enough.
+ */
+public class MatchOffsets {
+
+    private static final int FIELD_COUNT = 4;
+    private static final int COLUMN = 0;
+    private static final int TOKEN = 1;
+    private static final int START = 2;
+    private static final int LENGTH = 3;
+
+    private int[] mValues;
+    private int mCount;
+
+    public MatchOffsets() {
+        this(16);
+    }
+
+    public MatchOffsets(int initialMatchCapacity) {
+        mValues = new int[Math.max(1, initialMatchCapacity) * FIELD_COUNT];
+    }
+
+    /**
+     * Replaces the current matches with the ones in the offsets string. Parsing stops at the
+     * first value that isn't an unsigned integer and an incomplete trailing match is dropped.
+     *
+     * @return the number of matches parsed
+     */
+    public int parse(CharSequence offsets) {
+        mCount = 0;
+        if (offsets == null) return 0;
+
+        int length = offsets.length();
+        int valueCount = 0;
+        int value = 0;
+        boolean inValue = false;
+
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? offsets.charAt(i) : ' ';
+
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                inValue = true;
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                if (inValue) {
+                    if (valueCount == mValues.length) {
+                        grow();
+                    }
+                    mValues[valueCount++] = value;
+                    value = 0;
+                    inValue = false;
+                }
+            } else {
+                break;
+            }
+        }
+
+        mCount = valueCount / FIELD_COUNT;
+        return mCount;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getColumn(int match) {
+        return mValues[match * FIELD_COUNT + COLUMN];
+    }
+
+    public int getToken(int match) {
+        return mValues[match * FIELD_COUNT + TOKEN];
+    }
+
+    public int getStart(int match) {
+        return mValues[match * FIELD_COUNT + START];
+    }
+
+    public int getLength(int match) {
+        return mValues[match * FIELD_COUNT + LENGTH];
+    }
+
+    private void grow() {
+        int[] values = new int[mValues.length * 2];
+        System.arraycopy(mValues, 0, values, 0, mValues.length);
+        mValues = values;
+    }
+}
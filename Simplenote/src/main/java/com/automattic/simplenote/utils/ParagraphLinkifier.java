@@ -0,0 +1,178 @@
+package com.automattic.simplenote.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.URLSpan;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the links of an editor's text current without linkifying the whole text every time.
+ *
+ * Edits are reported through {@link #onTextChanged} and widen the range that needs to be
+ * linkified again. {@link #addLinks} copies only the paragraphs in that range, finds their
+ * links on a background thread and then adds and removes link spans in those paragraphs on
+ * the UI thread. Links never span a line break so paragraphs can be linkified on their own.
+ *
+ * All methods must be called on the UI thread.
+ */
+public class ParagraphLinkifier {
+
+    // All editors share one background thread
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final int mMask;
+
+    // Range of the text whose links may be out of date, deleting text leaves an empty range
+    private boolean mDirty;
+    private int mDirtyStart;
+    private int mDirtyEnd;
+
+    // Incremented on every edit, links found for an older generation are dropped
+    private int mGeneration;
+
+    public ParagraphLinkifier(int mask) {
+        mMask = mask;
+    }
+
+    /**
+     * Call from {@link android.text.TextWatcher#onTextChanged} with the same arguments
+     */
+    public void onTextChanged(int start, int before, int count) {
+        mGeneration++;
+
+        int delta = count - before;
+        if (!mDirty) {
+            mDirty = true;
+            mDirtyStart = start;
+            mDirtyEnd = start + count;
+            return;
+        }
+
+        // move the dirty range along with the text and include the edited chars
+        int dirtyStart = mDirtyStart > start ? Math.max(start, mDirtyStart + delta) : mDirtyStart;
+        int dirtyEnd = mDirtyEnd > start ? Math.max(start, mDirtyEnd + delta) : mDirtyEnd;
+        mDirtyStart = Math.min(dirtyStart, start);
+        mDirtyEnd = Math.max(dirtyEnd, start + count);
+    }
+
+    /**
+     * Marks the whole text as needing links, e.g. when a note was loaded before edits were
+     * reported
+     */
+    public void invalidate(CharSequence text) {
+        mGeneration++;
+        mDirty = true;
+        mDirtyStart = 0;
+        mDirtyEnd = text.length();
+    }
+
+    /**
+     * Drops links that are being looked for, e.g. when the editor is paused
+     */
+    public void cancel() {
+        mGeneration++;
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Updates the links of the paragraphs that were edited since links were last added
+     */
+    public void addLinks(final TextView textView) {
+        if (!(textView.getText() instanceof Spannable)) {
+            SimplenoteLinkify.addLinks(textView, mMask);
+            return;
+        }
+
+        if (!mDirty) return;
+
+        final Spannable text = (Spannable) textView.getText();
+        int length = text.length();
+        int dirtyStart = Math.min(mDirtyStart, length);
+        int dirtyEnd = Math.min(mDirtyEnd, length);
+
+        // widen the range to whole paragraphs
+        final int start = dirtyStart > 0 ? TextUtils.lastIndexOf(text, '\n', dirtyStart - 1) + 1 : 0;
+        int paragraphEnd = TextUtils.indexOf(text, '\n', dirtyEnd);
+        final int end = paragraphEnd == -1 ? length : paragraphEnd;
+
+        final String paragraphs = text.subSequence(start, end).toString();
+        final int generation = mGeneration;
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SpannableString linkedParagraphs = new SpannableString(paragraphs);
+                SimplenoteLinkify.addLinks(linkedParagraphs, mMask);
+                final URLSpan[] links = linkedParagraphs.getSpans(0, linkedParagraphs.length(), URLSpan.class);
+                final int[] ranges = new int[links.length * 2];
+                for (int i = 0; i < links.length; i++) {
+                    ranges[i * 2] = linkedParagraphs.getSpanStart(links[i]);
+                    ranges[i * 2 + 1] = linkedParagraphs.getSpanEnd(links[i]);
+                }
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the text changed while links were found, they'll be found again
+                        if (generation != mGeneration || textView.getText() != text) return;
+
+                        applyLinks(text, start, end, links, ranges);
+                        mDirty = false;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replaces the link spans between start and end with the links found there, leaving the
+     * spans of links that didn't change
+     */
+    private static void applyLinks(Spannable text, int start, int end, URLSpan[] links, int[] ranges) {
+        Set<String> linkKeys = new HashSet<>(links.length);
+        for (int i = 0; i < links.length; i++) {
+            linkKeys.add(linkKey(start + ranges[i * 2], start + ranges[i * 2 + 1], links[i].getURL()));
+        }
+
+        Set<String> existingKeys = new HashSet<>();
+        List<URLSpan> removedSpans = new ArrayList<>();
+        for (URLSpan span : text.getSpans(start, end, URLSpan.class)) {
+            int spanStart = text.getSpanStart(span);
+            int spanEnd = text.getSpanEnd(span);
+            if (spanStart < start || spanEnd > end) continue;
+
+            String key = linkKey(spanStart, spanEnd, span.getURL());
+            if (linkKeys.contains(key) && existingKeys.add(key)) continue;
+
+            removedSpans.add(span);
+        }
+
+        for (URLSpan span : removedSpans) {
+            text.removeSpan(span);
+        }
+
+        for (int i = 0; i < links.length; i++) {
+            int linkStart = start + ranges[i * 2];
+            int linkEnd = start + ranges[i * 2 + 1];
+            if (!existingKeys.contains(linkKey(linkStart, linkEnd, links[i].getURL()))) {
+                text.setSpan(links[i], linkStart, linkEnd, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+    }
+
+    private static String linkKey(int start, int end, String url) {
+        return start + ":" + end + ":" + url;
+    }
+}
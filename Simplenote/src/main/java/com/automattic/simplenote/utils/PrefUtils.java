@@ -43,6 +43,12 @@ public class PrefUtils {
     // boolean, determines if the theme was ever changed
     public static final String PREF_THEME_MODIFIED = "pref_theme_modified";
 
+    // boolean, set once every note has been saved with its tag index
+    public static final String PREF_TAG_INDEX_BUILT = "pref_tag_index_built";
+
+    // string, key of the last note saved by a tag index build that hasn't finished
+    public static final String PREF_TAG_INDEX_RESUME_KEY = "pref_tag_index_resume_key";
+
     private static SharedPreferences getPrefs(Context context) {
         return PreferenceManager.getDefaultSharedPreferences(context);
     }
@@ -2,6 +2,8 @@ package com.automattic.simplenote.utils;
 
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
 
 public class SearchSnippetFormatter {
 
@@ -20,6 +22,11 @@ public class SearchSnippetFormatter {
         return (new SearchSnippetFormatter(factory, snippet)).toSpannableString();
     }
 
+    // Immutable copy of the formatted snippet that can be built on a background thread and shared between views
+    public static Spanned formatSpanned(String snippet, SpanFactory factory) {
+        return new SpannedString(formatString(snippet, factory));
+    }
+
 
     private String mSnippet;
     private SpanFactory mFactory;
@@ -13,6 +13,8 @@ public class SearchTokenizer {
     static public final char ESCAPE = '\\';
 
     private String mRawQuery;
+    // the query is parsed on the first call to toString()
+    private String mParsedQuery;
 
     public SearchTokenizer(String query) {
         mRawQuery = query;
@@ -115,7 +117,10 @@ public class SearchTokenizer {
 
     @Override
     public String toString() {
-        return parseQuery();
+        if (mParsedQuery == null) {
+            mParsedQuery = parseQuery();
+        }
+        return mParsedQuery;
     }
 
 
@@ -24,10 +24,7 @@ public class SimplenoteLinkify {
         CharSequence t = text.getText();
 
         if (t instanceof Spannable) {
-            boolean linked = Linkify.addLinks((Spannable) t, mask);
-            Linkify.addLinks((Spannable) t, SIMPLENOTE_LINK_PATTERN, SIMPLENOTE_SCHEME);
-
-            return linked;
+            return addLinks((Spannable) t, mask);
         } else {
             SpannableString s = SpannableString.valueOf(t);
 
@@ -39,4 +36,12 @@ public class SimplenoteLinkify {
             return false;
         }
     }
+
+    // Adds the Linkify links and Simplenote links to the text, doesn't need to run on the UI thread
+    public static boolean addLinks(Spannable text, int mask) {
+        boolean linked = Linkify.addLinks(text, mask);
+        Linkify.addLinks(text, SIMPLENOTE_LINK_PATTERN, SIMPLENOTE_SCHEME);
+
+        return linked;
+    }
 }
@@ -63,6 +63,11 @@ public class TagsAdapter extends BaseAdapter {
                 return Note.all(mNotesBucket);
             }
 
+            @Override
+            public boolean contains(Note note){
+                return !note.isDeleted();
+            }
+
         };
         mTrashItem = new TagMenuItem(TRASH_ID, R.string.trash){
 
@@ -71,6 +76,11 @@ public class TagsAdapter extends BaseAdapter {
                 return Note.allDeleted(mNotesBucket);
             }
 
+            @Override
+            public boolean contains(Note note){
+                return note.isDeleted();
+            }
+
         };
 
         TypedArray a = mContext.obtainStyledAttributes(new int[]{R.attr.noteTitleColor});
@@ -222,5 +232,12 @@ public class TagsAdapter extends BaseAdapter {
         public Query<Note> query(){
             return Note.allInTag(mNotesBucket, this.name);
         }
+
+        /**
+         * Checks a single note against the same conditions as {@link #query()}
+         */
+        public boolean contains(Note note){
+            return !note.isDeleted() && note.hasTag(this.name);
+        }
     }
 }
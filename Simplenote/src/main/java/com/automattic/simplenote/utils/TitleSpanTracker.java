@@ -0,0 +1,77 @@
+package com.automattic.simplenote.utils;
+
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.RelativeSizeSpan;
+
+/**
+ * Keeps the first line of a note in a larger size while it's edited. The tracker remembers
+ * where the first line ends and is told about every edit, so the span is only moved when an
+ * edit touches the first line and the document is never scanned past its first new line.
+ */
+public class TitleSpanTracker {
+
+    private static final float TITLE_SIZE = 1.227f;
+
+    private final RelativeSizeSpan mTitleSpan = new RelativeSizeSpan(TITLE_SIZE);
+
+    // Where the first line ends, -1 if it has to be found again
+    private int mTitleEnd = -1;
+    // Whether mTitleEnd is a new line rather than the end of the text
+    private boolean mTitleHasNewLine;
+    private boolean mTitleChanged;
+
+    /**
+     * Forgets where the first line ends, e.g. when the text is replaced before the tracker
+     * is told about edits
+     */
+    public void reset() {
+        mTitleEnd = -1;
+    }
+
+    /**
+     * Call from {@link android.text.TextWatcher#onTextChanged} with the same arguments
+     */
+    public void onTextChanged(CharSequence text, int start, int before, int count) {
+        if (mTitleEnd < 0 || start > mTitleEnd) return;
+
+        boolean removedNewLine = mTitleHasNewLine && start + before > mTitleEnd;
+        if (removedNewLine || TextUtils.indexOf(text, '\n', start, start + count) != -1) {
+            mTitleEnd = -1;
+        } else {
+            mTitleEnd += count - before;
+        }
+        mTitleChanged = true;
+    }
+
+    /**
+     * Call from {@link android.text.TextWatcher#afterTextChanged} to update the span if the
+     * first line changed
+     */
+    public void apply(Spannable text) {
+        // the span isn't on this text when it was replaced or the first line was empty
+        if (mTitleEnd > text.length() || text.getSpanStart(mTitleSpan) == -1) {
+            mTitleEnd = -1;
+        }
+
+        if (mTitleEnd >= 0 && !mTitleChanged) return;
+
+        if (mTitleEnd < 0) {
+            int newLinePosition = TextUtils.indexOf(text, '\n');
+            mTitleHasNewLine = newLinePosition != -1;
+            mTitleEnd = mTitleHasNewLine ? newLinePosition : text.length();
+        }
+        mTitleChanged = false;
+
+        if (mTitleEnd == 0) {
+            text.removeSpan(mTitleSpan);
+        } else {
+            text.setSpan(mTitleSpan, 0, mTitleEnd, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        }
+    }
+
+    public int getTitleEnd() {
+        return mTitleEnd;
+    }
+}
@@ -0,0 +1,61 @@
+package com.automattic.simplenote.utils;
+
+/**
+ * Converts UTF-8 byte offsets, like the ones SQLite's fulltext offsets() function returns,
+ * into char offsets within the original text.
+ *
+ * The translator remembers where the previous conversion ended, so converting offsets in
+ * ascending order walks the text only once. Converting an offset before the previous one
+ * starts over from the beginning of the text.
+ */
+public class Utf8OffsetTranslator {
+
+    private final CharSequence mText;
+    private final int mLength;
+
+    private int mCharOffset;
+    private int mByteOffset;
+
+    public Utf8OffsetTranslator(CharSequence text) {
+        mText = text;
+        mLength = text.length();
+    }
+
+    /**
+     * Returns the index of the char that starts at the given byte offset, or the length of the
+     * text if the offset is past its end. An offset inside a multi-byte character resolves to
+     * the character after it.
+     */
+    public int toCharOffset(int byteOffset) {
+        if (byteOffset < mByteOffset) {
+            mCharOffset = 0;
+            mByteOffset = 0;
+        }
+
+        while (mByteOffset < byteOffset && mCharOffset < mLength) {
+            char c = mText.charAt(mCharOffset);
+
+            if (c < 0x80) {
+                mByteOffset += 1;
+                mCharOffset += 1;
+            } else if (c < 0x800) {
+                mByteOffset += 2;
+                mCharOffset += 1;
+            } else if (Character.isHighSurrogate(c) && mCharOffset + 1 < mLength &&
+                    Character.isLowSurrogate(mText.charAt(mCharOffset + 1))) {
+                // a supplementary code point is two chars and four bytes
+                mByteOffset += 4;
+                mCharOffset += 2;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are encoded as a single '?' like String.getBytes() does
+                mByteOffset += 1;
+                mCharOffset += 1;
+            } else {
+                mByteOffset += 3;
+                mCharOffset += 1;
+            }
+        }
+
+        return mCharOffset;
+    }
+}